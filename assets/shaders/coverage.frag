@@ -0,0 +1,35 @@
+#ifdef GL_ES
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
+precision mediump float;
+#endif
+#endif
+
+// Each RGBA8 texel packs 32 horizontally adjacent coverage cells, least significant bit first. The color texture
+// packs 16 cells per texel as 2-bit indices into the 4x1 palette texture.
+uniform sampler2D u_texture;
+uniform sampler2D u_colors;
+uniform sampler2D u_palette;
+uniform vec2 u_cells;
+varying vec4 v_color;
+varying vec2 v_texCoords;
+
+float extractBits(vec4 texel, float bitInTexel, float width) {
+    float channel = floor(bitInTexel / 8.0);
+    float bit = bitInTexel - channel * 8.0;
+    float value = channel < 0.5 ? texel.r : channel < 1.5 ? texel.g : channel < 2.5 ? texel.b : texel.a;
+    return mod(floor(floor(value * 255.0 + 0.5) / exp2(bit)), exp2(width));
+}
+
+void main() {
+    vec2 cell = floor(v_texCoords * u_cells);
+    float texelX = floor(cell.x / 32.0);
+    vec4 texel = texture2D(u_texture, (vec2(texelX, cell.y) + 0.5) / vec2(u_cells.x / 32.0, u_cells.y));
+    float covered = extractBits(texel, cell.x - texelX * 32.0, 1.0);
+    float colorTexelX = floor(cell.x / 16.0);
+    vec4 colorTexel = texture2D(u_colors, (vec2(colorTexelX, cell.y) + 0.5) / vec2(u_cells.x / 16.0, u_cells.y));
+    float index = extractBits(colorTexel, (cell.x - colorTexelX * 16.0) * 2.0, 2.0);
+    vec4 color = texture2D(u_palette, vec2((index + 0.5) / 4.0, 0.5));
+    gl_FragColor = vec4(color.rgb, v_color.a * covered);
+}
@@ -0,0 +1,73 @@
+package pitheguy.countycolor.coloring;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BitKernelsBenchmark {
+    @Param({"scalar", "vector"})
+    public String kernels;
+    // One ChunkedBitmap container and one coverage tile
+    @Param({"1024", "4096"})
+    public int words;
+    private BitKernels impl;
+    private long[] a;
+    private long[] b;
+    private long[] scratch;
+    // Every fourth bit, which is how history snapshots sample the default grid
+    private int[] wordIndices;
+    private long[] shifts;
+
+    @Setup
+    public void setup() {
+        impl = kernels.equals("vector") ? new VectorBitKernels() : new ScalarBitKernels();
+        Random random = new Random(1);
+        a = new long[words];
+        b = new long[words];
+        scratch = new long[words];
+        for (int i = 0; i < words; i++) {
+            a[i] = random.nextLong() & random.nextLong();
+            b[i] = random.nextLong() | random.nextLong();
+        }
+        wordIndices = new int[words * 16];
+        shifts = new long[words * 16];
+        for (int i = 0; i < words * 16; i++) {
+            wordIndices[i] = i * 4 >> 6;
+            shifts[i] = i * 4 & 63;
+        }
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return impl.cardinality(a, words);
+    }
+
+    @Benchmark
+    public int countRuns() {
+        return impl.countRuns(a, words);
+    }
+
+    @Benchmark
+    public long[] andNot() {
+        System.arraycopy(a, 0, scratch, 0, words);
+        impl.andNot(scratch, b, words);
+        return scratch;
+    }
+
+    @Benchmark
+    public int retainAll() {
+        System.arraycopy(a, 0, scratch, 0, words);
+        return impl.retainAll(scratch, b, words);
+    }
+
+    @Benchmark
+    public long[] gatherBits() {
+        impl.gatherBits(a, wordIndices, shifts, scratch, words * 16);
+        return scratch;
+    }
+}
@@ -0,0 +1,60 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.Vector2;
+import org.openjdk.jmh.annotations.*;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CoverageBenchmark {
+    @Param({"DENSE", "OFF_HEAP", "INTERVALS", "CHUNKS", "QUADTREE"})
+    public CoverageBackend backend;
+    @Param({"50", "1000"})
+    public int strokes;
+    private ColoringGrid grid;
+
+    @Setup
+    public void setup() {
+        grid = new ColoringGrid(backend);
+        paint(grid, strokes, 1);
+    }
+
+    @Benchmark
+    public ColoringGrid applyStrokes() {
+        ColoringGrid grid = new ColoringGrid(backend);
+        paint(grid, strokes, 1);
+        return grid;
+    }
+
+    @Benchmark
+    public String encode() {
+        return grid.asEncodedString();
+    }
+
+    @Benchmark
+    public ColoringGrid copy() {
+        return grid.copy();
+    }
+
+    @Benchmark
+    public int countColored() {
+        int count = 0;
+        for (int y = 0; y < 8000; y += 7)
+            for (int x = 0; x < 8000; x += 7)
+                if (grid.get(x, y)) count++;
+        return count;
+    }
+
+    private static void paint(ColoringGrid grid, int strokes, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < strokes; i++) {
+            Vector2 start = new Vector2(random.nextFloat() * 780 - 390, random.nextFloat() * 780 - 390);
+            Vector2 end = start.cpy().add(random.nextFloat() * 60 - 30, random.nextFloat() * 60 - 30);
+            grid.applyStroke(start, end, 1 + random.nextFloat() * 20);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package pitheguy.countycolor.coloring;
+
+// Word-parallel loops shared by the bitmaps. The vectorized implementation needs the incubating Vector API, which is
+// only resolved when the JVM is started with --add-modules jdk.incubator.vector; otherwise the scalar loops are used.
+public interface BitKernels {
+    BitKernels INSTANCE = load();
+
+    int cardinality(long[] words, int length);
+
+    // Number of maximal runs of set bits, counting bit 0 of each word as following bit 63 of the previous one
+    int countRuns(long[] words, int length);
+
+    void and(long[] words, long[] other, int length);
+
+    void andNot(long[] words, long[] other, int length);
+
+    // Clears every bit not in mask and returns how many were cleared
+    int retainAll(long[] words, long[] mask, int length);
+
+    // Bit i of destination becomes bit shifts[i] of words[wordIndices[i]] for every i < count. The destination words
+    // this covers are overwritten, including the bits past count in the last one.
+    void gatherBits(long[] words, int[] wordIndices, long[] shifts, long[] destination, int count);
+
+    private static BitKernels load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (BitKernels) Class.forName("pitheguy.countycolor.coloring.VectorBitKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {}
+        }
+        return new ScalarBitKernels();
+    }
+}
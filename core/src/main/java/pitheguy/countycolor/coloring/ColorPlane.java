@@ -0,0 +1,87 @@
+package pitheguy.countycolor.coloring;
+
+import java.nio.LongBuffer;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+
+// Palette index of every cell of a tile, packed two bits per cell and 32 cells per word. Indices are relative to the
+// grid's main color, so a tile only needs a plane once something else is painted on it. Only covered cells are
+// meaningful: clearing coverage leaves the index behind, which is what lets redo restore a stroke's original colors.
+public class ColorPlane {
+    public static final int WORDS_PER_ROW = SIZE / 32;
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private final long[] words;
+
+    ColorPlane() {
+        this(new long[WORDS_PER_ROW * SIZE]);
+    }
+
+    private ColorPlane(long[] words) {
+        this.words = words;
+    }
+
+    public int get(int x, int y) {
+        return (int) (words[y * WORDS_PER_ROW + (x >> 5)] >>> ((x & 31) * 2)) & 3;
+    }
+
+    // Sets the index of the cells in the given coverage word
+    public void write(int y, int coverageWord, long cells, int index) {
+        long pattern = index * EVEN_BITS;
+        for (int half = 0; half < 2; half++) {
+            long fields = spread((int) (cells >>> (half * 32)));
+            if (fields == 0) continue;
+            fields |= fields << 1;
+            int i = y * WORDS_PER_ROW + coverageWord * 2 + half;
+            words[i] = (words[i] & ~fields) | (pattern & fields);
+        }
+    }
+
+    // Cells of the given coverage word whose index isn't 0
+    public long getSecondaryCells(int y, int coverageWord, long cells) {
+        int i = y * WORDS_PER_ROW + coverageWord * 2;
+        long low = compact((words[i] | words[i] >>> 1) & EVEN_BITS);
+        long high = compact((words[i + 1] | words[i + 1] >>> 1) & EVEN_BITS);
+        return cells & (low | high << 32);
+    }
+
+    // Adds the number of cells in the given coverage word holding indices 1 to 3 to counts
+    public void count(int y, int coverageWord, long cells, int[] counts) {
+        for (int half = 0; half < 2; half++) {
+            long present = spread((int) (cells >>> (half * 32)));
+            if (present == 0) continue;
+            long word = words[y * WORDS_PER_ROW + coverageWord * 2 + half];
+            long low = word & present;
+            long high = (word >>> 1) & present;
+            counts[1] += Long.bitCount(low & ~high);
+            counts[2] += Long.bitCount(high & ~low);
+            counts[3] += Long.bitCount(low & high);
+        }
+    }
+
+    public void copyRows(int startY, int endY, LongBuffer destination) {
+        destination.put(words, startY * WORDS_PER_ROW, (endY - startY) * WORDS_PER_ROW);
+    }
+
+    public ColorPlane copy() {
+        return new ColorPlane(words.clone());
+    }
+
+    // Moves bit i of the input to bit 2i
+    private static long spread(int bits) {
+        long x = bits & 0xFFFFFFFFL;
+        x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+        x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+        x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x << 2) & 0x3333333333333333L;
+        return (x | x << 1) & EVEN_BITS;
+    }
+
+    // Inverse of spread for inputs that only use even bits
+    private static long compact(long x) {
+        x = (x | x >>> 1) & 0x3333333333333333L;
+        x = (x | x >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x >>> 4) & 0x00FF00FF00FF00FFL;
+        x = (x | x >>> 8) & 0x0000FFFF0000FFFFL;
+        return (x | x >>> 16) & 0xFFFFFFFFL;
+    }
+}
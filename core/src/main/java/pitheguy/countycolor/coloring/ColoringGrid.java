@@ -1,237 +1,719 @@
 package pitheguy.countycolor.coloring;
 
-import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.JsonValue;
-import pitheguy.countycolor.options.Options;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
 import pitheguy.countycolor.util.Util;
 
 import java.io.*;
-import java.util.Base64;
-import java.util.BitSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import static pitheguy.countycolor.render.util.RenderConst.COLORING_RESOLUTION;
-import static pitheguy.countycolor.render.util.RenderConst.COLORING_SIZE;
+import static pitheguy.countycolor.coloring.GridLayout.BLOCK_SIZE;
 
 public class ColoringGrid implements Disposable {
-    private static final int BLOCK_SIZE = 100;
-    private final Pixmap pixmap;
-    private final BitSet bitSet;
+    private static final int STREAM_BUFFER_SIZE = 1 << 13;
+    private static final int FORMAT_BLOCK_GROUPS = 2; // Older saves are a single GZIP stream, which starts with 0x1f
+    private static final int BLOCK_ROWS_PER_GROUP = 8;
+    private final GridLayout layout;
+    private final AtomicReferenceArray<CoverageTile> tiles;
+    private final CoverageBackend backend;
     private MapColor color;
-    private final ExecutorService pixmapUpdateExecutor;
-    private boolean needsTextureUpdate = false;
+    private MapColor brushColor;
+    private CoverageMask mask;
+    private UncoloredRegions uncoloredRegions;
+    private final StrokeLog<IntArray> strokeLog = new StrokeLog<>(runs -> (long) runs.size * Integer.BYTES);
+    private IntArray recording;
+    private volatile int coloredPoints;
+    private int version;
 
     public ColoringGrid() {
-        this.color = null;
-        pixmap = new Pixmap(COLORING_SIZE, COLORING_SIZE, Pixmap.Format.RGBA8888);
-        pixmap.setColor(new Color(0, 0, 0, 0));
-        pixmap.fill();
-        bitSet = new BitSet(COLORING_SIZE * COLORING_SIZE);
-        pixmapUpdateExecutor = Executors.newSingleThreadExecutor();
+        this(CoverageBackend.DENSE);
     }
 
-    private ColoringGrid(Pixmap pixmap, BitSet bitSet, MapColor color) {
-        this.pixmap = pixmap;
-        this.bitSet = bitSet;
-        this.color = color;
-        pixmapUpdateExecutor = Executors.newSingleThreadExecutor();
+    public ColoringGrid(CoverageBackend backend) {
+        this(GridLayout.DEFAULT, backend);
     }
 
-    public static ColoringGrid fromJson(JsonValue json) {
-        MapColor color = MapColor.fromSerializedName(json.getString("color"));
+    public ColoringGrid(GridLayout layout, CoverageBackend backend) {
+        this(layout, new AtomicReferenceArray<>(layout.getTileCount()), backend, null, null, null, 0);
+    }
 
-        String encoded = json.getString("coloredPoints");
-        byte[] compressed = Base64.getDecoder().decode(encoded);
-        BitSet bitSet = decode(compressed);
+    private ColoringGrid(GridLayout layout, AtomicReferenceArray<CoverageTile> tiles, CoverageBackend backend, MapColor color, CoverageMask mask, UncoloredRegions uncoloredRegions, int coloredPoints) {
+        this.layout = layout;
+        this.tiles = tiles;
+        this.backend = backend;
+        this.color = color;
+        this.mask = mask;
+        this.uncoloredRegions = uncoloredRegions;
+        this.coloredPoints = coloredPoints;
+    }
 
-        Pixmap pixmap = new Pixmap(COLORING_SIZE, COLORING_SIZE, Pixmap.Format.RGBA8888);
-        pixmap.setColor(0, 0, 0, 0);
-        pixmap.fill();
+    public static ColoringGrid fromJson(JsonValue json, CoverageBackend backend) {
+        MapColor color = MapColor.fromSerializedName(json.getString("color"));
 
-        pixmap.setColor(color.getColor());
-        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1))
-            pixmap.drawPixel(i % COLORING_SIZE, COLORING_SIZE - i / COLORING_SIZE);
+        ColoringGrid grid = new ColoringGrid(GridLayout.fromJson(json.get("gridLayout")), backend);
+        grid.color = color;
+        if (json.has("coloredPoints")) grid.decode(Base64.getDecoder().decode(json.getString("coloredPoints")));
+        return grid;
+    }
 
-        return new ColoringGrid(pixmap, bitSet, color);
+    public static ColoringGrid fromRuns(IntArray runs, GridLayout layout, MapColor color, CoverageBackend backend) {
+        ColoringGrid grid = new ColoringGrid(layout, backend);
+        grid.color = color;
+        for (int i = 0; i < runs.size; i += 3) grid.setRow(runs.get(i), runs.get(i + 1), runs.get(i + 2), 0);
+        return grid;
     }
 
+    // Format byte, block rows per group, group count and the compressed length of every group, then the groups. Each
+    // group is compressed on its own so they can be encoded and decoded in parallel.
     private byte[] encode() {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-        //noinspection ConstantValue
-        assert COLORING_SIZE % BLOCK_SIZE == 0;
-        for (int blockY = 0; blockY < COLORING_SIZE / BLOCK_SIZE; blockY++) {
-            for (int blockX = 0; blockX < COLORING_SIZE / BLOCK_SIZE; blockX++) {
-                boolean start = get(blockX * BLOCK_SIZE, blockY * BLOCK_SIZE);
-                boolean allSame = true;
-                loop:
-                for (int x = 0; x < BLOCK_SIZE; x++) {
-                    for (int y = 0; y < BLOCK_SIZE; y++) {
-                        if (get(blockX * BLOCK_SIZE + x, blockY * BLOCK_SIZE + y) != start) {
-                            allSame = false;
-                            break loop;
-                        }
-                    }
-                }
-                try {
-                    if (allSame) {
-                        dos.writeByte(start ? 2 : 1);
-                    } else {
+        int blockRows = layout.getHeight() / BLOCK_SIZE;
+        int groups = (blockRows + BLOCK_ROWS_PER_GROUP - 1) / BLOCK_ROWS_PER_GROUP;
+        byte[][] compressed = new byte[groups][];
+        IntStream.range(0, groups).parallel().forEach(group -> compressed[group] =
+            encodeBlockRows(group * BLOCK_ROWS_PER_GROUP, Math.min((group + 1) * BLOCK_ROWS_PER_GROUP, blockRows)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FORMAT_BLOCK_GROUPS);
+        Util.writeVarInt(BLOCK_ROWS_PER_GROUP, out);
+        Util.writeVarInt(groups, out);
+        for (byte[] group : compressed) Util.writeVarInt(group.length, out);
+        for (byte[] group : compressed) out.writeBytes(group);
+        return out.toByteArray();
+    }
+
+    private byte[] encodeBlockRows(int startBlockY, int endBlockY) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, STREAM_BUFFER_SIZE)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(gzip, STREAM_BUFFER_SIZE));
+            IntArray runs = new IntArray();
+            ByteArrayOutputStream rleStream = new ByteArrayOutputStream();
+            for (int blockY = startBlockY; blockY < endBlockY; blockY++) {
+                for (int blockX = 0; blockX < layout.getWidth() / BLOCK_SIZE; blockX++) {
+                    boolean multicolor = hasSecondaryCells(blockX, blockY);
+                    if (multicolor) getBlockSymbolRuns(blockX, blockY, runs);
+                    else getBlockRuns(blockX, blockY, runs);
+                    rleStream.reset();
+                    if (multicolor) {
+                        dos.writeByte(3);
+                        for (int i = 0; i < runs.size; i += 2) Util.writeVarInt(runs.get(i + 1) << 3 | runs.get(i), rleStream);
+                        dos.writeShort(rleStream.size());
+                        rleStream.writeTo(dos);
+                    } else if (runs.size == 1) dos.writeByte(1);
+                    else if (runs.size == 2 && runs.get(0) == 0) dos.writeByte(2);
+                    else {
                         dos.writeByte(0);
-                        ByteArrayOutputStream rleStream = new ByteArrayOutputStream();
-                        DataOutputStream rleDataStream = new DataOutputStream(rleStream);
-                        boolean current = get(blockX * BLOCK_SIZE, blockY * BLOCK_SIZE);
-                        int runLength = 0;
-                        if (current) Util.writeVarInt(0, rleDataStream);
-
-                        for (int y = 0; y < BLOCK_SIZE; y++) {
-                            for (int x = 0; x < BLOCK_SIZE; x++) {
-                                if (get(blockX * BLOCK_SIZE + x, blockY * BLOCK_SIZE + y) != current) {
-                                    Util.writeVarInt(runLength, rleDataStream);
-                                    current = get(blockX * BLOCK_SIZE + x, blockY * BLOCK_SIZE + y);
-                                    runLength = 1;
-                                } else runLength++;
-                            }
-                        }
-                        Util.writeVarInt(runLength, rleDataStream);
-                        byte[] rleBytes = rleStream.toByteArray();
-                        if (rleBytes[rleBytes.length - 1] == 0) System.out.println("Last byte was zero");
-                        dos.writeShort(rleBytes.length);
-                        dos.write(rleBytes);
+                        for (int i = 0; i < runs.size; i++) Util.writeVarInt(runs.get(i), rleStream);
+                        dos.writeShort(rleStream.size());
+                        rleStream.writeTo(dos);
                     }
-                } catch (IOException ignored) {}
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode coloring grid", e);
+        }
+        return out.toByteArray();
+    }
+
+    // Alternating uncolored/colored run lengths over the block in row-major order, starting with uncolored
+    private void getBlockRuns(int blockX, int blockY, IntArray runs) {
+        runs.clear();
+        int startX = blockX * BLOCK_SIZE;
+        int endX = startX + BLOCK_SIZE;
+        boolean colored = false;
+        int runLength = 0;
+        for (int y = blockY * BLOCK_SIZE; y < (blockY + 1) * BLOCK_SIZE; y++) {
+            int x = startX;
+            while (x < endX) {
+                int next = Math.min(colored ? nextClearBit(x, y) : nextSetBit(x, y), endX);
+                runLength += next - x;
+                x = next;
+                if (x < endX) {
+                    runs.add(runLength);
+                    colored = !colored;
+                    runLength = 0;
+                }
+            }
+        }
+        runs.add(runLength);
+    }
+
+    private boolean hasSecondaryCells(int blockX, int blockY) {
+        int startX = blockX * BLOCK_SIZE;
+        int endX = startX + BLOCK_SIZE;
+        for (int y = blockY * BLOCK_SIZE; y < (blockY + 1) * BLOCK_SIZE; y++) {
+            for (int x = startX; x < endX; x = (x / CoverageTile.SIZE + 1) * CoverageTile.SIZE) {
+                CoverageTile tile = getTile(x, y);
+                if (tile == null || !tile.hasSecondaryCells()) continue;
+                int localStart = x - tile.getOriginX();
+                int localEnd = Math.min(endX, tile.getOriginX() + CoverageTile.SIZE) - tile.getOriginX();
+                for (int word = localStart >> 6; word <= (localEnd - 1) >> 6; word++)
+                    if ((tile.getSecondaryCells(y - tile.getOriginY(), word) & CoverageTile.getRangeMask(word, localStart, localEnd)) != 0)
+                        return true;
+            }
+        }
+        return false;
+    }
+
+    // (symbol, length) pairs over the block in row-major order, where symbol 0 is uncolored and otherwise 1 + the
+    // ordinal of the cell's MapColor
+    private void getBlockSymbolRuns(int blockX, int blockY, IntArray runs) {
+        runs.clear();
+        int symbol = 0;
+        int runLength = 0;
+        for (int y = blockY * BLOCK_SIZE; y < (blockY + 1) * BLOCK_SIZE; y++) {
+            for (int x = blockX * BLOCK_SIZE; x < (blockX + 1) * BLOCK_SIZE; x++) {
+                int cellSymbol = get(x, y) ? 1 + getCellColor(x, y).ordinal() : 0;
+                if (cellSymbol != symbol && runLength > 0) {
+                    runs.add(symbol, runLength);
+                    runLength = 0;
+                }
+                symbol = cellSymbol;
+                runLength++;
+            }
+        }
+        runs.add(symbol, runLength);
+    }
+
+    public IntArray getRuns() {
+        IntArray runs = new IntArray();
+        for (int y = 0; y < layout.getHeight(); y++) {
+            int x = nextSetBit(0, y);
+            while (x < layout.getWidth()) {
+                int end = nextClearBit(x, y);
+                runs.add(y, x, end);
+                x = nextSetBit(end, y);
+            }
+        }
+        return runs;
+    }
+
+    private int nextSetBit(int x, int y) {
+        while (x < layout.getWidth()) {
+            CoverageTile tile = getTile(x, y);
+            if (tile != null) {
+                int next = tile.nextSetBit(y - tile.getOriginY(), x - tile.getOriginX());
+                if (next < tile.getWidth()) return tile.getOriginX() + next;
             }
+            x = (x / CoverageTile.SIZE + 1) * CoverageTile.SIZE;
         }
-        return Util.compress(baos.toByteArray());
+        return layout.getWidth();
     }
 
-    private static BitSet decode(byte[] input) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(Util.decompress(input));
-        DataInputStream dis = new DataInputStream(bais);
-        BitSet bitSet = new BitSet(COLORING_SIZE * COLORING_SIZE);
-        for (int blockY = 0; blockY < COLORING_SIZE / BLOCK_SIZE; blockY++) {
-            for (int blockX = 0; blockX < COLORING_SIZE / BLOCK_SIZE; blockX++) {
-                try {
+    private int nextClearBit(int x, int y) {
+        while (x < layout.getWidth()) {
+            CoverageTile tile = getTile(x, y);
+            if (tile == null) return x;
+            int next = tile.nextClearBit(y - tile.getOriginY(), x - tile.getOriginX());
+            if (next < tile.getWidth()) return tile.getOriginX() + next;
+            x = tile.getOriginX() + tile.getWidth();
+        }
+        return layout.getWidth();
+    }
+
+    // Rows of blocks are decoded in parallel straight into the tiles. Tile creation is atomic and tiles lock themselves;
+    // the workers leave the running total alone and it's summed from the tiles afterwards.
+    private void decode(byte[] data) {
+        if (data.length > 0 && data[0] == FORMAT_BLOCK_GROUPS) {
+            ByteArrayInputStream header = new ByteArrayInputStream(data, 1, data.length - 1);
+            int rowsPerGroup = Util.readVarInt(header);
+            int groups = Util.readVarInt(header);
+            int[] offsets = new int[groups + 1];
+            for (int i = 0; i < groups; i++) offsets[i + 1] = offsets[i] + Util.readVarInt(header);
+            int start = data.length - header.available();
+            int blockRows = layout.getHeight() / BLOCK_SIZE;
+            IntStream.range(0, groups).parallel().forEach(group -> {
+                InputStream compressed = new ByteArrayInputStream(data, start + offsets[group], offsets[group + 1] - offsets[group]);
+                decodeBlockRows(compressed, group * rowsPerGroup, Math.min((group + 1) * rowsPerGroup, blockRows));
+            });
+        } else decodeBlockRows(new ByteArrayInputStream(data), 0, layout.getHeight() / BLOCK_SIZE); // Saves from before the format byte
+        int total = 0;
+        for (int i = 0; i < tiles.length(); i++)
+            if (tiles.get(i) != null) total += tiles.get(i).cardinality();
+        coloredPoints = total;
+    }
+
+    private void decodeBlockRows(InputStream compressed, int startBlockY, int endBlockY) {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(compressed, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE))) {
+            byte[] rleBytes = new byte[Short.MAX_VALUE];
+            for (int blockY = startBlockY; blockY < endBlockY; blockY++) {
+                for (int blockX = 0; blockX < layout.getWidth() / BLOCK_SIZE; blockX++) {
                     byte header = dis.readByte();
-                    if (header == 2) for (int y = 0; y < BLOCK_SIZE; y++) {
-                        int bitSetY = blockY * BLOCK_SIZE + y;
-                        int startX = blockX * BLOCK_SIZE;
-                        bitSet.set(bitSetY * COLORING_SIZE + startX, bitSetY * COLORING_SIZE + startX + BLOCK_SIZE);
-                    }
-                    else if (header == 0) {
+                    int startX = blockX * BLOCK_SIZE;
+                    if (header == 2) for (int y = 0; y < BLOCK_SIZE; y++)
+                        colorRow(blockY * BLOCK_SIZE + y, startX, startX + BLOCK_SIZE, 0);
+                    else if (header == 3) {
+                        int size = dis.readShort();
+                        dis.readFully(rleBytes, 0, size);
+                        ByteArrayInputStream rleDis = new ByteArrayInputStream(rleBytes, 0, size);
+                        int index = 0;
+                        while (rleDis.available() > 0) {
+                            int run = Util.readVarInt(rleDis);
+                            int symbol = run & 7;
+                            int runLength = run >>> 3;
+                            if (symbol > MapColor.values().length) throw new RuntimeException("Invalid color symbol: " + symbol);
+                            if (symbol > 0) setBlockRange(blockX, blockY, index, index + runLength, getColorIndex(MapColor.values()[symbol - 1]));
+                            index += runLength;
+                        }
+                    } else if (header == 0) {
                         int size = dis.readShort();
-                        byte[] rleBytes = dis.readNBytes(size);
-                        ByteArrayInputStream rleBais = new ByteArrayInputStream(rleBytes);
-                        DataInputStream rleDis = new DataInputStream(rleBais);
+                        dis.readFully(rleBytes, 0, size);
+                        ByteArrayInputStream rleDis = new ByteArrayInputStream(rleBytes, 0, size);
                         int index = 0;
                         boolean current = false;
                         while (rleDis.available() > 0) {
                             int runLength = Util.readVarInt(rleDis);
-                            if (current) {
-                                for (int i = index; i < index + runLength; i++) {
-                                    int bitSetY = blockY * BLOCK_SIZE + i / BLOCK_SIZE;
-                                    int bitSetX = blockX * BLOCK_SIZE + i % BLOCK_SIZE;
-                                    bitSet.set(bitSetY * COLORING_SIZE + bitSetX);
-                                }
-                            }
+                            if (current) setBlockRange(blockX, blockY, index, index + runLength, 0);
                             index += runLength;
                             current = !current;
                         }
                     } else if (header != 1) throw new RuntimeException("Invalid header byte: " + header);
-                } catch (IOException ignored) {}
+                }
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode coloring grid", e);
+        }
+    }
+
+    // Colors the cells [start, end) of a block in row-major order
+    private void setBlockRange(int blockX, int blockY, int start, int end, int colorIndex) {
+        int startX = blockX * BLOCK_SIZE;
+        for (int i = start; i < end; i = (i / BLOCK_SIZE + 1) * BLOCK_SIZE) {
+            int rowEnd = Math.min(end, (i / BLOCK_SIZE + 1) * BLOCK_SIZE);
+            int y = blockY * BLOCK_SIZE + i / BLOCK_SIZE;
+            colorRow(y, startX + i % BLOCK_SIZE, startX + i % BLOCK_SIZE + rowEnd - i, colorIndex);
         }
-        return bitSet;
     }
 
     public void setColor(MapColor color) {
         this.color = color;
-        pixmap.setColor(color.getColor());
     }
 
-    public Pixmap asPixmap() {
-        return pixmap;
+    public void setBrushColor(MapColor brushColor) {
+        this.brushColor = brushColor;
+    }
+
+    public MapColor getBrushColor() {
+        return brushColor == null ? getColor() : brushColor;
+    }
+
+    // Tile color planes store colors relative to the main color, so a grid painted in one color needs no planes
+    private int getColorIndex(MapColor cellColor) {
+        return (cellColor.ordinal() - getColor().ordinal()) & 3;
+    }
+
+    private int getBrushIndex() {
+        return brushColor == null ? 0 : getColorIndex(brushColor);
+    }
+
+    private MapColor getCellColor(int x, int y) {
+        CoverageTile tile = getTile(x, y);
+        int index = tile == null ? 0 : tile.getColorIndex(x - tile.getOriginX(), y - tile.getOriginY());
+        return MapColor.values()[(getColor().ordinal() + index) & 3];
+    }
+
+    // Row y's words tile by tile, CoverageTile.WORDS_PER_ROW for each tile column, so word i holds cells 64i to 64i + 63
+    public void copyRowWords(int y, long[] destination) {
+        int tileY = y / CoverageTile.SIZE;
+        for (int tileX = 0; tileX < layout.getTilesX(); tileX++) {
+            CoverageTile tile = tiles.get(tileY * layout.getTilesX() + tileX);
+            int offset = tileX * CoverageTile.WORDS_PER_ROW;
+            if (tile == null) Arrays.fill(destination, offset, offset + CoverageTile.WORDS_PER_ROW, 0);
+            else tile.copyRows(y - tile.getOriginY(), y - tile.getOriginY() + 1, LongBuffer.wrap(destination, offset, CoverageTile.WORDS_PER_ROW));
+        }
+    }
+
+    public boolean hasSecondaryColors() {
+        for (int i = 0; i < tiles.length(); i++)
+            if (tiles.get(i) != null && tiles.get(i).hasSecondaryCells()) return true;
+        return false;
     }
 
-    public BitSet asBitSet() {
-        return bitSet;
+    // Colored cells per MapColor, indexed by ordinal
+    public int[] getColorCounts() {
+        int[] relative = new int[4];
+        for (int i = 0; i < tiles.length(); i++) {
+            CoverageTile tile = tiles.get(i);
+            if (tile != null) tile.countColors(relative);
+        }
+        int[] counts = new int[4];
+        for (int i = 0; i < 4; i++) counts[(getColor().ordinal() + i) & 3] = relative[i];
+        return counts;
+    }
+
+    public MapColor getDominantColor() {
+        if (!hasSecondaryColors()) return getColor();
+        int[] counts = getColorCounts();
+        MapColor dominant = getColor();
+        for (MapColor candidate : MapColor.values())
+            if (counts[candidate.ordinal()] > counts[dominant.ordinal()]) dominant = candidate;
+        return dominant;
+    }
+
+    public List<CoverageTile> getTiles() {
+        List<CoverageTile> result = new ArrayList<>();
+        for (int i = 0; i < tiles.length(); i++)
+            if (tiles.get(i) != null) result.add(tiles.get(i));
+        return result;
     }
 
     public String asEncodedString() {
         return Base64.getEncoder().encodeToString(encode());
     }
 
+    public GridLayout getLayout() {
+        return layout;
+    }
+
     public MapColor getColor() {
         if (color == null) throw new IllegalStateException("Color hasn't been set yet");
         return color;
     }
 
+    private CoverageTile getTile(int x, int y) {
+        return tiles.get((y / CoverageTile.SIZE) * layout.getTilesX() + x / CoverageTile.SIZE);
+    }
+
+    private CoverageTile getOrCreateTile(int tileX, int tileY) {
+        int index = tileY * layout.getTilesX() + tileX;
+        CoverageTile tile = tiles.get(index);
+        if (tile == null) {
+            int width = Math.min(CoverageTile.SIZE, layout.getWidth() - tileX * CoverageTile.SIZE);
+            int height = Math.min(CoverageTile.SIZE, layout.getHeight() - tileY * CoverageTile.SIZE);
+            tile = new CoverageTile(tileX, tileY, width, height, backend);
+            if (!tiles.compareAndSet(index, null, tile)) tile = tiles.get(index);
+        }
+        return tile;
+    }
+
+    public CoverageMask getMask() {
+        return mask;
+    }
+
+    public void setMask(CoverageMask mask) {
+        if (this.mask == mask) return;
+        this.mask = mask;
+        uncoloredRegions = new UncoloredRegions(layout);
+        for (int i = 0; i < tiles.length(); i++) {
+            CoverageTile tile = tiles.get(i);
+            if (tile != null) coloredPoints -= tile.retainAll(mask.getTileWords(tile.getTileX(), tile.getTileY()));
+        }
+    }
+
     public void set(int x, int y) {
-        pixmap.drawPixel(x, COLORING_SIZE - y);
-        bitSet.set(y * COLORING_SIZE + x);
+        if (!layout.inBounds(x, y) || (mask != null && !mask.contains(x, y))) return;
+        CoverageTile tile = getOrCreateTile(x / CoverageTile.SIZE, y / CoverageTile.SIZE);
+        if (tile.set(x - tile.getOriginX(), y - tile.getOriginY(), getBrushIndex())) {
+            coloredPoints++;
+            version++;
+            if (recording != null) recording.add(y, x, x + 1);
+            if (uncoloredRegions != null) uncoloredRegions.markDirty(tile.getTileX(), tile.getTileY());
+        }
     }
 
-    public void applyBrush(Vector2 pos, float brushSize) {
-        int effectiveBrushSize = (int) (brushSize * COLORING_RESOLUTION);
-        int centerX = (int) (pos.x * COLORING_RESOLUTION + COLORING_SIZE / 2f);
-        int centerY = (int) (pos.y * COLORING_RESOLUTION + COLORING_SIZE / 2f);
-        if (Options.ASYNC_GRID_UPDATES.get()) pixmapUpdateExecutor.submit(() -> fillPixmapCircle(centerX, centerY, effectiveBrushSize));
-        else fillPixmapCircle(centerX, centerY, effectiveBrushSize);
-        int startX = (int) (pos.x * COLORING_RESOLUTION - effectiveBrushSize);
-        int startY = (int) (pos.y * COLORING_RESOLUTION - effectiveBrushSize);
-        int endX = (int) (pos.x * COLORING_RESOLUTION + effectiveBrushSize);
-        int endY = (int) (pos.y * COLORING_RESOLUTION + effectiveBrushSize);
-        for (int x = startX; x < endX; x++) {
-            for (int y = startY; y < endY; y++) {
-                float dx = pos.x * COLORING_RESOLUTION - x;
-                float dy = pos.y * COLORING_RESOLUTION - y;
-                if (dx * dx + dy * dy < effectiveBrushSize * effectiveBrushSize) {
-                    int indexX = x + COLORING_SIZE / 2;
-                    int indexY = y + COLORING_SIZE / 2;
-                    bitSet.set(indexY * COLORING_SIZE + indexX);
-                }
+    public List<UncoloredRegion> getUncoloredRegions() {
+        if (uncoloredRegions == null) return Collections.emptyList();
+        return uncoloredRegions.getRegions(tiles, mask);
+    }
+
+    private int setRow(int y, int startX, int endX, int colorIndex) {
+        int newlyColored = colorRow(y, startX, endX, colorIndex);
+        coloredPoints += newlyColored;
+        if (newlyColored > 0) version++;
+        return newlyColored;
+    }
+
+    // Only touches the tiles, so unlike setRow it's safe to call from several threads at once
+    private int colorRow(int y, int startX, int endX, int colorIndex) {
+        if (y < 0 || y >= layout.getHeight()) return 0;
+        startX = Math.max(startX, 0);
+        endX = Math.min(endX, layout.getWidth());
+        int newlyColored = 0;
+        for (int x = startX; x < endX; ) {
+            int tileX = x / CoverageTile.SIZE;
+            int tileY = y / CoverageTile.SIZE;
+            int tileEnd = Math.min(endX, (tileX + 1) * CoverageTile.SIZE);
+            long[] maskWords = mask == null ? null : mask.getTileWords(tileX, tileY);
+            if (mask == null || maskWords != null) {
+                CoverageTile tile = getOrCreateTile(tileX, tileY);
+                int newlySet = tile.setRange(y - tile.getOriginY(), x - tile.getOriginX(), tileEnd - tile.getOriginX(), maskWords, recording, colorIndex);
+                if (newlySet > 0 && uncoloredRegions != null) uncoloredRegions.markDirty(tileX, tileY);
+                newlyColored += newlySet;
+            }
+            x = tileEnd;
+        }
+        return newlyColored;
+    }
+
+    private int clearRow(int y, int startX, int endX) {
+        int cleared = 0;
+        for (int x = startX; x < endX; ) {
+            int tileX = x / CoverageTile.SIZE;
+            int tileY = y / CoverageTile.SIZE;
+            int tileEnd = Math.min(endX, (tileX + 1) * CoverageTile.SIZE);
+            CoverageTile tile = tiles.get(tileY * layout.getTilesX() + tileX);
+            if (tile != null) {
+                int tileCleared = tile.clearRange(y - tile.getOriginY(), x - tile.getOriginX(), tileEnd - tile.getOriginX());
+                if (tileCleared > 0 && uncoloredRegions != null) uncoloredRegions.markDirty(tileX, tileY);
+                cleared += tileCleared;
             }
+            x = tileEnd;
         }
+        coloredPoints -= cleared;
+        if (cleared > 0) version++;
+        return cleared;
     }
 
-    private void fillPixmapCircle(int centerX, int centerY, int effectiveBrushSize) {
-        pixmap.fillCircle(centerX, COLORING_SIZE - centerY, effectiveBrushSize);
-        needsTextureUpdate = true;
+    public void beginStroke() {
+        recording = new IntArray();
     }
 
-    public boolean get(int x, int y) {
-        return bitSet.get(y * COLORING_SIZE + x);
+    public void endStroke() {
+        if (recording == null) return;
+        if (!recording.isEmpty()) strokeLog.push(recording);
+        recording = null;
     }
 
-    public int coloredPoints() {
-        return bitSet.cardinality();
+    public boolean undo() {
+        IntArray runs = strokeLog.undo();
+        if (runs == null) return false;
+        for (int i = 0; i < runs.size; i += 3) clearRow(runs.get(i), runs.get(i + 1), runs.get(i + 2));
+        return true;
     }
 
-    public boolean isEmpty() {
-        return bitSet.isEmpty();
+    public boolean redo() {
+        IntArray runs = strokeLog.redo();
+        if (runs == null) return false;
+        // Undo leaves the color planes alone, so keeping them restores each stroke's original colors
+        for (int i = 0; i < runs.size; i += 3) setRow(runs.get(i), runs.get(i + 1), runs.get(i + 2), CoverageTile.KEEP_COLOR);
+        return true;
+    }
+
+    public void applyBrush(Vector2 pos, float brushSize) {
+        applyStroke(pos, pos, brushSize);
+    }
+
+    public void applyStroke(Vector2 from, Vector2 to, float brushSize) {
+        float radius = brushSize * layout.getResolution();
+        float startX = layout.toGridX(from.x);
+        float startY = layout.toGridY(from.y);
+        float endX = layout.toGridX(to.x);
+        float endY = layout.toGridY(to.y);
+        int minY = Math.max((int) Math.floor(Math.min(startY, endY) - radius), 0);
+        int maxY = Math.min((int) Math.ceil(Math.max(startY, endY) + radius), layout.getHeight());
+        float[] chord = new float[2];
+        int colorIndex = getBrushIndex();
+        for (int y = minY; y < maxY; y++) {
+            if (!capsuleChord(startX, startY, endX, endY, radius, y + 0.5f, chord)) continue;
+            setRow(y, (int) Math.ceil(chord[0] - 0.5f), (int) Math.floor(chord[1] - 0.5f) + 1, colorIndex);
+        }
+    }
+
+    public int fill(Vector2 pos) {
+        int seedX = (int) Math.floor(layout.toGridX(pos.x));
+        int seedY = (int) Math.floor(layout.toGridY(pos.y));
+        return fill(seedX, seedY, null);
+    }
+
+    public IntArray findSliverRuns(int maxArea) {
+        IntArray runs = new IntArray();
+        List<UncoloredRegion> regions = getUncoloredRegions();
+        for (int i = regions.size() - 1; i >= 0 && regions.get(i).getArea() <= maxArea; i--)
+            fill(regions.get(i).getSeedX(), regions.get(i).getSeedY(), runs);
+        return runs;
+    }
+
+    public int applyRuns(IntArray runs) {
+        int newlyColored = 0;
+        int colorIndex = getBrushIndex();
+        for (int i = 0; i < runs.size; i += 3) newlyColored += setRow(runs.get(i), runs.get(i + 1), runs.get(i + 2), colorIndex);
+        return newlyColored;
+    }
+
+    // Sliver runs belong to the stroke that left the slivers behind, so they join the newest undo entry rather than
+    // getting one of their own
+    public int applySliverRuns(IntArray runs) {
+        if (recording != null) return applyRuns(runs);
+        recording = new IntArray();
+        int filled = applyRuns(runs);
+        if (!recording.isEmpty()) strokeLog.amend(recording, IntArray::addAll);
+        recording = null;
+        return filled;
+    }
+
+    public void adoptUncoloredRegions(ColoringGrid snapshot) {
+        if (uncoloredRegions != null && snapshot.uncoloredRegions != null && snapshot.mask == mask)
+            uncoloredRegions.adopt(snapshot.uncoloredRegions);
+    }
+
+    private int fill(int seedX, int seedY, IntArray runs) {
+        // Without the county mask there's nothing to bound the fill but the grid itself
+        if (mask == null || !isFillable(seedX, seedY)) return 0;
+        int filled = 0;
+        int colorIndex = getBrushIndex();
+        IntArray stack = new IntArray();
+        int width = layout.getWidth();
+        stack.add(seedY * width + seedX);
+        while (stack.notEmpty()) {
+            int seed = stack.pop();
+            int x = seed % width;
+            int y = seed / width;
+            if (!isFillable(x, y)) continue;
+            int spanStart = findSpanStart(x, y);
+            int spanEnd = findSpanEnd(x, y);
+            filled += setRow(y, spanStart, spanEnd, colorIndex);
+            if (runs != null) runs.add(y, spanStart, spanEnd);
+            if (y > 0) pushSpanSeeds(stack, y - 1, spanStart, spanEnd);
+            if (y < layout.getHeight() - 1) pushSpanSeeds(stack, y + 1, spanStart, spanEnd);
+        }
+        return filled;
+    }
+
+    private void pushSpanSeeds(IntArray stack, int y, int startX, int endX) {
+        int x = findNextFillable(startX, y, endX);
+        while (x < endX) {
+            stack.add(y * layout.getWidth() + x);
+            x = findNextFillable(findSpanEnd(x, y), y, endX);
+        }
+    }
+
+    private boolean isFillable(int x, int y) {
+        return layout.inBounds(x, y) && (getFillableWord(y, x >> 6) & (1L << x)) != 0;
+    }
+
+    private long getFillableWord(int y, int word) {
+        int tileX = word / CoverageTile.WORDS_PER_ROW;
+        int tileY = y / CoverageTile.SIZE;
+        int localY = y - tileY * CoverageTile.SIZE;
+        int localWord = word - tileX * CoverageTile.WORDS_PER_ROW;
+        long fillable = -1L;
+        if (word == layout.getWordsPerRow() - 1 && layout.getWidth() % 64 != 0) fillable = -1L >>> (64 - layout.getWidth() % 64);
+        long[] maskWords = mask.getTileWords(tileX, tileY);
+        fillable &= maskWords == null ? 0 : maskWords[localY * CoverageTile.WORDS_PER_ROW + localWord];
+        CoverageTile tile = tiles.get(tileY * layout.getTilesX() + tileX);
+        return tile == null ? fillable : fillable & ~tile.getWord(localY, localWord);
+    }
+
+    private int findSpanStart(int x, int y) {
+        int word = x >> 6;
+        long blocked = ~getFillableWord(y, word) & (-1L >>> (63 - (x & 63)));
+        while (blocked == 0) {
+            if (--word < 0) return 0;
+            blocked = ~getFillableWord(y, word);
+        }
+        return word * 64 + 64 - Long.numberOfLeadingZeros(blocked);
+    }
+
+    private int findSpanEnd(int x, int y) {
+        int word = x >> 6;
+        long blocked = ~getFillableWord(y, word) & (-1L << x);
+        while (blocked == 0) {
+            if (++word >= layout.getWordsPerRow()) return layout.getWidth();
+            blocked = ~getFillableWord(y, word);
+        }
+        return Math.min(word * 64 + Long.numberOfTrailingZeros(blocked), layout.getWidth());
+    }
+
+    private int findNextFillable(int x, int y, int limit) {
+        if (x >= limit) return limit;
+        int word = x >> 6;
+        long fillable = getFillableWord(y, word) & (-1L << x);
+        while (fillable == 0) {
+            if (++word * 64 >= limit) return limit;
+            fillable = getFillableWord(y, word);
+        }
+        return Math.min(word * 64 + Long.numberOfTrailingZeros(fillable), limit);
+    }
+
+    static boolean capsuleChord(float startX, float startY, float endX, float endY, float radius, float y, float[] chord) {
+        float low = Float.POSITIVE_INFINITY;
+        float high = Float.NEGATIVE_INFINITY;
+        float startDy = y - startY;
+        if (startDy * startDy < radius * radius) {
+            float halfWidth = (float) Math.sqrt(radius * radius - startDy * startDy);
+            low = startX - halfWidth;
+            high = startX + halfWidth;
+        }
+        float endDy = y - endY;
+        if (endDy * endDy < radius * radius) {
+            float halfWidth = (float) Math.sqrt(radius * radius - endDy * endDy);
+            low = Math.min(low, endX - halfWidth);
+            high = Math.max(high, endX + halfWidth);
+        }
+        float dx = endX - startX;
+        float dy = endY - startY;
+        float lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared > 0) {
+            // Body of the capsule: 0 <= (P - start) . d <= |d|^2 and |(P - start) x d| < radius * |d|
+            float bodyLow = Float.NEGATIVE_INFINITY;
+            float bodyHigh = Float.POSITIVE_INFINITY;
+            float dotOffset = startDy * dy;
+            if (dx != 0) {
+                float a = (-dotOffset) / dx + startX;
+                float b = (lengthSquared - dotOffset) / dx + startX;
+                bodyLow = Math.min(a, b);
+                bodyHigh = Math.max(a, b);
+            } else if (dotOffset < 0 || dotOffset > lengthSquared) bodyHigh = bodyLow;
+            float crossOffset = dx * startDy;
+            float crossLimit = radius * (float) Math.sqrt(lengthSquared);
+            if (dy != 0) {
+                float a = (crossOffset - crossLimit) / dy + startX;
+                float b = (crossOffset + crossLimit) / dy + startX;
+                bodyLow = Math.max(bodyLow, Math.min(a, b));
+                bodyHigh = Math.min(bodyHigh, Math.max(a, b));
+            } else if (Math.abs(crossOffset) >= crossLimit) bodyHigh = bodyLow;
+            if (bodyLow < bodyHigh) {
+                low = Math.min(low, bodyLow);
+                high = Math.max(high, bodyHigh);
+            }
+        }
+        chord[0] = low;
+        chord[1] = high;
+        return low < high;
     }
 
-    public boolean needsTextureUpdate() {
-        return needsTextureUpdate;
+    public boolean get(int x, int y) {
+        if (!layout.inBounds(x, y)) return false;
+        CoverageTile tile = getTile(x, y);
+        return tile != null && tile.get(x - tile.getOriginX(), y - tile.getOriginY());
     }
 
-    public void textureUpdated() {
-        needsTextureUpdate = false;
+    // Bumped whenever cells are colored or cleared, so background work on a copy can tell if it went stale
+    public int getVersion() {
+        return version;
+    }
+
+    public int coloredPoints() {
+        return coloredPoints;
+    }
+
+    public boolean isEmpty() {
+        return coloredPoints == 0;
     }
 
     public void dispose() {
-        pixmap.dispose();
-        pixmapUpdateExecutor.shutdownNow();
+        for (int i = 0; i < tiles.length(); i++) tiles.set(i, null);
     }
 
     public ColoringGrid copy() {
-        BitSet copyBitSet = (BitSet) bitSet.clone();
-        Pixmap copyPixmap = new Pixmap(pixmap.getWidth(), pixmap.getHeight(), pixmap.getFormat());
-        copyPixmap.drawPixmap(pixmap, 0, 0);
-        return new ColoringGrid(copyPixmap, copyBitSet, color);
+        AtomicReferenceArray<CoverageTile> copyTiles = new AtomicReferenceArray<>(tiles.length());
+        int copyColoredPoints = 0;
+        for (int i = 0; i < tiles.length(); i++) {
+            CoverageTile tile = tiles.get(i);
+            if (tile == null) continue;
+            CoverageTile copy = tile.copy();
+            copyColoredPoints += copy.cardinality();
+            copyTiles.set(i, copy);
+        }
+        ColoringGrid copy = new ColoringGrid(layout, copyTiles, backend, color, mask, uncoloredRegions == null ? null : uncoloredRegions.copy(), copyColoredPoints);
+        copy.brushColor = brushColor;
+        return copy;
     }
 }
@@ -0,0 +1,57 @@
+package pitheguy.countycolor.coloring;
+
+public class CoverageMask {
+    private final GridLayout layout;
+    private final long[][] tiles;
+    private int cardinality;
+
+    public CoverageMask(GridLayout layout) {
+        this.layout = layout;
+        tiles = new long[layout.getTileCount()][];
+    }
+
+    public void addRange(int y, int startX, int endX) {
+        if (y < 0 || y >= layout.getHeight()) return;
+        startX = Math.max(startX, 0);
+        endX = Math.min(endX, layout.getWidth());
+        int tileY = y / CoverageTile.SIZE;
+        int rowOffset = (y - tileY * CoverageTile.SIZE) * CoverageTile.WORDS_PER_ROW;
+        for (int x = startX; x < endX; ) {
+            int tileX = x / CoverageTile.SIZE;
+            int index = tileY * layout.getTilesX() + tileX;
+            int tileEnd = Math.min(endX, (tileX + 1) * CoverageTile.SIZE);
+            if (tiles[index] == null) tiles[index] = new long[CoverageTile.WORDS_PER_ROW * CoverageTile.SIZE];
+            int localStart = x - tileX * CoverageTile.SIZE;
+            int localEnd = tileEnd - tileX * CoverageTile.SIZE;
+            for (int word = localStart >> 6; word <= (localEnd - 1) >> 6; word++) {
+                long mask = -1L;
+                if (word == localStart >> 6) mask &= -1L << localStart;
+                if (word == (localEnd - 1) >> 6) mask &= -1L >>> (63 - ((localEnd - 1) & 63));
+                long old = tiles[index][rowOffset + word];
+                cardinality += Long.bitCount(mask & ~old);
+                tiles[index][rowOffset + word] = old | mask;
+            }
+            x = tileEnd;
+        }
+    }
+
+    public boolean contains(int x, int y) {
+        if (!layout.inBounds(x, y)) return false;
+        long[] words = getTileWords(x / CoverageTile.SIZE, y / CoverageTile.SIZE);
+        if (words == null) return false;
+        int localX = x % CoverageTile.SIZE;
+        return (words[(y % CoverageTile.SIZE) * CoverageTile.WORDS_PER_ROW + (localX >> 6)] & (1L << localX)) != 0;
+    }
+
+    public long[] getTileWords(int tileX, int tileY) {
+        return tiles[tileY * layout.getTilesX() + tileX];
+    }
+
+    public GridLayout getLayout() {
+        return layout;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+}
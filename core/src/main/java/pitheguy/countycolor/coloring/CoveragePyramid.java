@@ -0,0 +1,103 @@
+package pitheguy.countycolor.coloring;
+
+import java.nio.ByteBuffer;
+
+public class CoveragePyramid {
+    public static final int LEVELS = 3;
+    private final CoverageTile tile;
+    private final DirtyRegion pendingRegion = new DirtyRegion();
+    private final DirtyRegion[] uploadRegions = new DirtyRegion[LEVELS];
+    private byte[][] levels;
+
+    public CoveragePyramid(CoverageTile tile) {
+        this.tile = tile;
+        for (int i = 0; i < LEVELS; i++) uploadRegions[i] = new DirtyRegion();
+    }
+
+    public static int getScale(int level) {
+        return 2 << level;
+    }
+
+    public static int getSize(int level) {
+        return CoverageTile.SIZE / getScale(level);
+    }
+
+    public void markDirty(int startX, int startY, int endX, int endY) {
+        pendingRegion.add(startX, startY, endX, endY);
+    }
+
+    public void update() {
+        DirtyRegion region = pendingRegion.poll();
+        int startX, startY, endX, endY;
+        if (levels == null) {
+            levels = new byte[LEVELS][];
+            for (int level = 1; level <= LEVELS; level++) levels[level - 1] = new byte[getSize(level) * getSize(level)];
+            startX = startY = 0;
+            endX = endY = getSize(1);
+        } else if (region.isEmpty()) return;
+        else {
+            startX = region.getStartX() / getScale(1);
+            startY = region.getStartY() / getScale(1);
+            endX = divideRoundingUp(region.getEndX(), getScale(1));
+            endY = divideRoundingUp(region.getEndY(), getScale(1));
+        }
+        updateBaseLevel(startX, startY, endX, endY);
+        uploadRegions[0].add(startX, startY, endX, endY);
+        for (int level = 2; level <= LEVELS; level++) {
+            startX /= 2;
+            startY /= 2;
+            endX = divideRoundingUp(endX, 2);
+            endY = divideRoundingUp(endY, 2);
+            downsample(level, startX, startY, endX, endY);
+            uploadRegions[level - 1].add(startX, startY, endX, endY);
+        }
+    }
+
+    private void updateBaseLevel(int startX, int startY, int endX, int endY) {
+        int scale = getScale(1);
+        int size = getSize(1);
+        int cellArea = scale * scale;
+        byte[] values = levels[0];
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                int count = 0;
+                int bitX = x * scale;
+                for (int row = y * scale; row < (y + 1) * scale; row++)
+                    count += Long.bitCount((tile.getWord(row, bitX >> 6) >>> (bitX & 63)) & ((1L << scale) - 1));
+                values[y * size + x] = (byte) (count * 255 / cellArea);
+            }
+        }
+    }
+
+    private void downsample(int level, int startX, int startY, int endX, int endY) {
+        int size = getSize(level);
+        int sourceSize = getSize(level - 1);
+        byte[] source = levels[level - 2];
+        byte[] values = levels[level - 1];
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                int sourceIndex = 2 * y * sourceSize + 2 * x;
+                int sum = (source[sourceIndex] & 0xFF) + (source[sourceIndex + 1] & 0xFF)
+                    + (source[sourceIndex + sourceSize] & 0xFF) + (source[sourceIndex + sourceSize + 1] & 0xFF);
+                values[y * size + x] = (byte) ((sum + 2) / 4);
+            }
+        }
+    }
+
+    public DirtyRegion getUploadRegion(int level) {
+        return uploadRegions[level - 1];
+    }
+
+    public void copyRows(int level, int startY, int endY, ByteBuffer destination) {
+        int size = getSize(level);
+        byte[] values = levels[level - 1];
+        for (int i = startY * size; i < endY * size; i++) {
+            destination.put((byte) 0xFF);
+            destination.put(values[i]);
+        }
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,253 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.utils.IntArray;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+import pitheguy.countycolor.coloring.storage.TileStorage;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+public class CoverageTile {
+    public static final int SIZE = 512;
+    public static final int WORDS_PER_ROW = SIZE / 64;
+    public static final int KEEP_COLOR = -1;
+    private final int tileX;
+    private final int tileY;
+    private final int width;
+    private final int height;
+    private final TileStorage storage;
+    private int cardinality;
+    private ColorPlane colors;
+    private boolean colorsShared;
+    private boolean hasSecondaryCells;
+    private boolean secondaryCellsStale = true;
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    // Tracked apart from the coverage so color rows written while nothing draws them still get uploaded later
+    private final DirtyRegion colorDirtyRegion = new DirtyRegion();
+    private final CoveragePyramid pyramid = new CoveragePyramid(this);
+
+    public CoverageTile(int tileX, int tileY, int width, int height, CoverageBackend backend) {
+        this(tileX, tileY, width, height, backend.createStorage(), 0, null);
+    }
+
+    private CoverageTile(int tileX, int tileY, int width, int height, TileStorage storage, int cardinality, ColorPlane colors) {
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.width = width;
+        this.height = height;
+        this.storage = storage;
+        this.cardinality = cardinality;
+        this.colors = colors;
+        this.colorsShared = colors != null;
+    }
+
+    public int getTileX() {
+        return tileX;
+    }
+
+    public int getTileY() {
+        return tileY;
+    }
+
+    public int getOriginX() {
+        return tileX * SIZE;
+    }
+
+    public int getOriginY() {
+        return tileY * SIZE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public synchronized boolean get(int x, int y) {
+        return storage.get(x, y);
+    }
+
+    public synchronized boolean set(int x, int y, int colorIndex) {
+        if (storage.get(x, y)) return false;
+        writeColor(y, x >> 6, 1L << x, colorIndex);
+        storage.setRun(y, x, x + 1);
+        cardinality++;
+        markDirty(x, y, x + 1, y + 1);
+        return true;
+    }
+
+    // colorIndex is relative to the grid's main color; KEEP_COLOR leaves whatever index the cells held before
+    public synchronized int setRange(int y, int startX, int endX, long[] mask, IntArray newlySetRuns, int colorIndex) {
+        if (startX >= endX) return 0;
+        int rowOffset = y * WORDS_PER_ROW;
+        int newlySet = 0;
+        int runStart = -1;
+        int runEnd = -1;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++) {
+            long bits = getRangeMask(word, startX, endX) & ~storage.getWord(y, word);
+            if (mask != null) bits &= mask[rowOffset + word];
+            newlySet += Long.bitCount(bits);
+            writeColor(y, word, bits, colorIndex);
+            while (bits != 0) {
+                int start = Long.numberOfTrailingZeros(bits);
+                int length = Long.numberOfTrailingZeros(~(bits >>> start));
+                bits = length == 64 ? 0 : bits & ~(((1L << length) - 1) << start);
+                if (word * 64 + start != runEnd) {
+                    setRun(y, runStart, runEnd, newlySetRuns);
+                    runStart = word * 64 + start;
+                }
+                runEnd = word * 64 + start + length;
+            }
+        }
+        setRun(y, runStart, runEnd, newlySetRuns);
+        if (newlySet == 0) return 0;
+        cardinality += newlySet;
+        markDirty(startX, y, endX, y + 1);
+        return newlySet;
+    }
+
+    private void writeColor(int y, int word, long cells, int colorIndex) {
+        if (cells == 0 || colorIndex == KEEP_COLOR || (colorIndex == 0 && colors == null)) return;
+        if (colors == null) colors = new ColorPlane();
+        else if (colorsShared) colors = colors.copy();
+        colorsShared = false;
+        colors.write(y, word, cells, colorIndex);
+        colorDirtyRegion.add(word * 64, y, word * 64 + 64, y + 1);
+    }
+
+    private void setRun(int y, int startX, int endX, IntArray newlySetRuns) {
+        if (startX < 0) return;
+        storage.setRun(y, startX, endX);
+        if (newlySetRuns == null) return;
+        int globalY = getOriginY() + y;
+        int globalStart = getOriginX() + startX;
+        int globalEnd = getOriginX() + endX;
+        int size = newlySetRuns.size;
+        if (size >= 3 && newlySetRuns.get(size - 3) == globalY && newlySetRuns.get(size - 1) == globalStart)
+            newlySetRuns.set(size - 1, globalEnd);
+        else newlySetRuns.add(globalY, globalStart, globalEnd);
+    }
+
+    public synchronized int clearRange(int y, int startX, int endX) {
+        if (startX >= endX) return 0;
+        int cleared = 0;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++)
+            cleared += Long.bitCount(getRangeMask(word, startX, endX) & storage.getWord(y, word));
+        if (cleared == 0) return 0;
+        storage.clearRun(y, startX, endX);
+        cardinality -= cleared;
+        markDirty(startX, y, endX, y + 1);
+        return cleared;
+    }
+
+    public synchronized int retainAll(long[] mask) {
+        int removed = storage.retainAll(mask);
+        if (removed == 0) return 0;
+        cardinality -= removed;
+        markDirty(0, 0, width, height);
+        return removed;
+    }
+
+    public static long getRangeMask(int word, int startX, int endX) {
+        long mask = -1L;
+        if (word == startX >> 6) mask &= -1L << startX;
+        if (word == (endX - 1) >> 6) mask &= -1L >>> (63 - ((endX - 1) & 63));
+        return mask;
+    }
+
+    private void markDirty(int startX, int startY, int endX, int endY) {
+        secondaryCellsStale = true;
+        dirtyRegion.add(startX, startY, endX, endY);
+        pyramid.markDirty(startX, startY, endX, endY);
+    }
+
+    public synchronized long getWord(int y, int word) {
+        return storage.getWord(y, word);
+    }
+
+    public synchronized int nextSetBit(int y, int x) {
+        return storage.nextSetBit(y, x);
+    }
+
+    public synchronized int nextClearBit(int y, int x) {
+        return storage.nextClearBit(y, x);
+    }
+
+    public synchronized void copyRows(int startY, int endY, LongBuffer destination) {
+        storage.copyRows(startY, endY, destination);
+    }
+
+    public synchronized ByteBuffer getRowBytes(int startY, int endY) {
+        return storage.getRowBytes(startY, endY);
+    }
+
+    public synchronized boolean hasColors() {
+        return colors != null;
+    }
+
+    // Undo leaves color plane bits behind, so this checks covered cells rather than just whether a plane exists
+    public synchronized boolean hasSecondaryCells() {
+        if (colors == null) return false;
+        if (secondaryCellsStale) {
+            hasSecondaryCells = false;
+            for (int y = 0; y < height && !hasSecondaryCells; y++)
+                for (int word = 0; word < WORDS_PER_ROW && !hasSecondaryCells; word++)
+                    hasSecondaryCells = colors.getSecondaryCells(y, word, storage.getWord(y, word)) != 0;
+            secondaryCellsStale = false;
+        }
+        return hasSecondaryCells;
+    }
+
+    public synchronized int getColorIndex(int x, int y) {
+        return colors == null ? 0 : colors.get(x, y);
+    }
+
+    // Covered cells of the given word that aren't in the main color
+    public synchronized long getSecondaryCells(int y, int word) {
+        if (colors == null) return 0;
+        return colors.getSecondaryCells(y, word, storage.getWord(y, word));
+    }
+
+    public synchronized void copyColorRows(int startY, int endY, LongBuffer destination) {
+        if (colors != null) colors.copyRows(startY, endY, destination);
+        else for (int i = 0; i < (endY - startY) * ColorPlane.WORDS_PER_ROW; i++) destination.put(0);
+    }
+
+    // Adds the covered cells of each relative color index to counts
+    public synchronized void countColors(int[] counts) {
+        int secondary = -counts[1] - counts[2] - counts[3];
+        if (colors != null) {
+            for (int y = 0; y < height; y++) {
+                for (int word = 0; word < WORDS_PER_ROW; word++) {
+                    long cells = storage.getWord(y, word);
+                    if (cells != 0) colors.count(y, word, cells, counts);
+                }
+            }
+        }
+        secondary += counts[1] + counts[2] + counts[3];
+        counts[0] += cardinality - secondary;
+    }
+
+    public DirtyRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+
+    public DirtyRegion getColorDirtyRegion() {
+        return colorDirtyRegion;
+    }
+
+    public CoveragePyramid getPyramid() {
+        return pyramid;
+    }
+
+    public synchronized int cardinality() {
+        return cardinality;
+    }
+
+    public synchronized CoverageTile copy() {
+        colorsShared = colors != null;
+        return new CoverageTile(tileX, tileY, width, height, storage.copy(), cardinality, colors);
+    }
+}
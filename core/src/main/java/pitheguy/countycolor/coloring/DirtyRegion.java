@@ -0,0 +1,57 @@
+package pitheguy.countycolor.coloring;
+
+public class DirtyRegion {
+    private int startX, startY, endX, endY;
+
+    public DirtyRegion() {
+        clear();
+    }
+
+    private DirtyRegion(int startX, int startY, int endX, int endY) {
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+    }
+
+    public synchronized void add(int startX, int startY, int endX, int endY) {
+        if (startX >= endX || startY >= endY) return;
+        this.startX = Math.min(this.startX, startX);
+        this.startY = Math.min(this.startY, startY);
+        this.endX = Math.max(this.endX, endX);
+        this.endY = Math.max(this.endY, endY);
+    }
+
+    public synchronized boolean isEmpty() {
+        return startX >= endX || startY >= endY;
+    }
+
+    public synchronized void clear() {
+        startX = Integer.MAX_VALUE;
+        startY = Integer.MAX_VALUE;
+        endX = Integer.MIN_VALUE;
+        endY = Integer.MIN_VALUE;
+    }
+
+    public synchronized DirtyRegion poll() {
+        DirtyRegion result = new DirtyRegion(startX, startY, endX, endY);
+        clear();
+        return result;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    public int getEndX() {
+        return endX;
+    }
+
+    public int getEndY() {
+        return endY;
+    }
+}
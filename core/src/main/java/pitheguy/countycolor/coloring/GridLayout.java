@@ -0,0 +1,138 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.JsonValue;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+import pitheguy.countycolor.render.PolygonCollection;
+
+import java.util.List;
+
+import static pitheguy.countycolor.render.util.RenderConst.*;
+
+// Size and resolution of a county's coloring grid. The grid is centered on the world origin and covers the
+// relativized bounding box of the county, so its dimensions are always multiples of BLOCK_SIZE.
+public class GridLayout {
+    public static final int BLOCK_SIZE = 100;
+    public static final int MIN_RESOLUTION = 4;
+    public static final int MAX_RESOLUTION = 16;
+    private static final float REFERENCE_EXTENT = 0.75f; // Extent in degrees that gets COLORING_RESOLUTION
+    private static final long MAX_COUNTY_CELLS = 64_000_000L;
+    public static final GridLayout DEFAULT = new GridLayout(COLORING_RESOLUTION, COLORING_SIZE, COLORING_SIZE);
+    private final int resolution;
+    private final int width;
+    private final int height;
+
+    public GridLayout(int resolution, int width, int height) {
+        if (width % BLOCK_SIZE != 0 || height % BLOCK_SIZE != 0)
+            throw new IllegalArgumentException("Grid dimensions must be multiples of " + BLOCK_SIZE);
+        this.resolution = resolution;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static GridLayout forCounty(PolygonCollection polygons, CoverageBackend backend) {
+        float xRange = polygons.getMaxX() - polygons.getMinX();
+        float yRange = polygons.getMaxY() - polygons.getMinY();
+        float maxRange = Math.max(xRange, yRange);
+        if (maxRange <= 0) return DEFAULT;
+        float midLatitude = (polygons.getMinY() + polygons.getMaxY()) / 2;
+        float extent = Math.max(xRange * MathUtils.cosDeg(midLatitude), yRange);
+        int resolution = MathUtils.clamp(Math.round(COLORING_RESOLUTION * (float) Math.sqrt(extent / REFERENCE_EXTENT)), MIN_RESOLUTION, MAX_RESOLUTION);
+        resolution *= backend.getResolutionScale();
+        double relativeArea = getArea(polygons) / (maxRange * maxRange) * RENDER_SIZE * RENDER_SIZE;
+        while (resolution > MIN_RESOLUTION && relativeArea * resolution * resolution > MAX_COUNTY_CELLS) resolution--;
+        return new GridLayout(resolution, getSize(xRange / maxRange, resolution), getSize(yRange / maxRange, resolution));
+    }
+
+    // Cells needed to cover the given fraction of RENDER_SIZE, plus a margin for the more detailed outline
+    private static int getSize(float fraction, int resolution) {
+        int cells = (int) Math.ceil(fraction * RENDER_SIZE * resolution * 1.02f) + 2;
+        return Math.min((cells + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE, (RENDER_SIZE * resolution + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+    }
+
+    private static double getArea(PolygonCollection polygons) {
+        double area = 0;
+        for (List<Vector2> polygon : polygons.getPolygons()) {
+            double polygonArea = 0;
+            for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++)
+                polygonArea += (double) polygon.get(j).x * polygon.get(i).y - (double) polygon.get(i).x * polygon.get(j).y;
+            area += Math.abs(polygonArea) / 2;
+        }
+        return area;
+    }
+
+    public static GridLayout fromJson(JsonValue json) {
+        if (json == null) return DEFAULT;
+        return new GridLayout(json.getInt("resolution"), json.getInt("width"), json.getInt("height"));
+    }
+
+    public JsonValue toJson() {
+        JsonValue json = new JsonValue(JsonValue.ValueType.object);
+        json.addChild("resolution", new JsonValue(resolution));
+        json.addChild("width", new JsonValue(width));
+        json.addChild("height", new JsonValue(height));
+        return json;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTilesX() {
+        return (width + CoverageTile.SIZE - 1) / CoverageTile.SIZE;
+    }
+
+    public int getTilesY() {
+        return (height + CoverageTile.SIZE - 1) / CoverageTile.SIZE;
+    }
+
+    public int getTileCount() {
+        return getTilesX() * getTilesY();
+    }
+
+    public int getWordsPerRow() {
+        return (width + 63) / 64;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public float toGridX(float worldX) {
+        return worldX * resolution + width / 2f;
+    }
+
+    public float toGridY(float worldY) {
+        return worldY * resolution + height / 2f;
+    }
+
+    public float toWorldX(float gridX) {
+        return (gridX - width / 2f) / resolution;
+    }
+
+    public float toWorldY(float gridY) {
+        return (gridY - height / 2f) / resolution;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof GridLayout)) return false;
+        GridLayout other = (GridLayout) obj;
+        return resolution == other.resolution && width == other.width && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return (resolution * 31 + width) * 31 + height;
+    }
+}
@@ -0,0 +1,54 @@
+package pitheguy.countycolor.coloring;
+
+import java.util.Arrays;
+
+class ScalarBitKernels implements BitKernels {
+    @Override
+    public int cardinality(long[] words, int length) {
+        int cardinality = 0;
+        for (int i = 0; i < length; i++) cardinality += Long.bitCount(words[i]);
+        return cardinality;
+    }
+
+    @Override
+    public int countRuns(long[] words, int length) {
+        int runs = 0;
+        long previous = 0;
+        for (int i = 0; i < length; i++) {
+            runs += Long.bitCount(words[i] & ~(words[i] << 1 | previous >>> 63));
+            previous = words[i];
+        }
+        return runs;
+    }
+
+    @Override
+    public void and(long[] words, long[] other, int length) {
+        for (int i = 0; i < length; i++) words[i] &= other[i];
+    }
+
+    @Override
+    public void andNot(long[] words, long[] other, int length) {
+        for (int i = 0; i < length; i++) words[i] &= ~other[i];
+    }
+
+    @Override
+    public int retainAll(long[] words, long[] mask, int length) {
+        int removed = 0;
+        for (int i = 0; i < length; i++) {
+            removed += Long.bitCount(words[i] & ~mask[i]);
+            words[i] &= mask[i];
+        }
+        return removed;
+    }
+
+    @Override
+    public void gatherBits(long[] words, int[] wordIndices, long[] shifts, long[] destination, int count) {
+        Arrays.fill(destination, 0, (count + 63) >> 6, 0);
+        for (int i = 0; i < count; i++) destination[i >> 6] |= (words[wordIndices[i]] >>> shifts[i] & 1) << i;
+    }
+
+    @Override
+    public String toString() {
+        return "Scalar";
+    }
+}
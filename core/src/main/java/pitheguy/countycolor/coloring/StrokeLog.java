@@ -0,0 +1,52 @@
+package pitheguy.countycolor.coloring;
+
+import java.util.ArrayDeque;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+// Undo and redo stacks of what each stroke added. Raster and vector coverage share the same byte budget, dropping
+// their oldest strokes once the estimated size of both stacks passes it.
+public class StrokeLog<T> {
+    public static final long MAX_BYTES = 32L * 1024 * 1024;
+    private final ArrayDeque<T> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<T> redoStack = new ArrayDeque<>();
+    private final ToLongFunction<T> sizeEstimator;
+    private long bytes;
+
+    public StrokeLog(ToLongFunction<T> sizeEstimator) {
+        this.sizeEstimator = sizeEstimator;
+    }
+
+    public void push(T entry) {
+        while (!redoStack.isEmpty()) bytes -= sizeEstimator.applyAsLong(redoStack.pop());
+        undoStack.push(entry);
+        bytes += sizeEstimator.applyAsLong(entry);
+        evict();
+    }
+
+    // Folds addition into the newest undo entry so both are undone together. Anything left to redo is kept.
+    public boolean amend(T addition, BiConsumer<T, T> merger) {
+        T entry = undoStack.peek();
+        if (entry == null) return false;
+        merger.accept(entry, addition);
+        bytes += sizeEstimator.applyAsLong(addition);
+        evict();
+        return true;
+    }
+
+    public T undo() {
+        T entry = undoStack.poll();
+        if (entry != null) redoStack.push(entry);
+        return entry;
+    }
+
+    public T redo() {
+        T entry = redoStack.poll();
+        if (entry != null) undoStack.push(entry);
+        return entry;
+    }
+
+    private void evict() {
+        while (bytes > MAX_BYTES && undoStack.size() > 1) bytes -= sizeEstimator.applyAsLong(undoStack.pollLast());
+    }
+}
@@ -0,0 +1,49 @@
+package pitheguy.countycolor.coloring;
+
+public class UncoloredRegion {
+    private final int area;
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+    private final int seedX;
+    private final int seedY;
+
+    public UncoloredRegion(int area, int minX, int minY, int maxX, int maxY, int seedX, int seedY) {
+        this.area = area;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.seedX = seedX;
+        this.seedY = seedY;
+    }
+
+    public int getArea() {
+        return area;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getSeedX() {
+        return seedX;
+    }
+
+    public int getSeedY() {
+        return seedY;
+    }
+}
@@ -0,0 +1,256 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+
+class UncoloredRegions {
+    private final GridLayout layout;
+    private final TileLabels[] tileLabels;
+    private final boolean[] dirty;
+    private final int[] versions;
+    private List<UncoloredRegion> regions;
+
+    UncoloredRegions(GridLayout layout) {
+        this(layout, new TileLabels[layout.getTileCount()], new boolean[layout.getTileCount()], new int[layout.getTileCount()], null);
+        Arrays.fill(dirty, true);
+    }
+
+    private UncoloredRegions(GridLayout layout, TileLabels[] tileLabels, boolean[] dirty, int[] versions, List<UncoloredRegion> regions) {
+        this.layout = layout;
+        this.tileLabels = tileLabels;
+        this.dirty = dirty;
+        this.versions = versions;
+        this.regions = regions;
+    }
+
+    synchronized void markDirty(int tileX, int tileY) {
+        int index = tileY * layout.getTilesX() + tileX;
+        dirty[index] = true;
+        versions[index]++;
+        regions = null;
+    }
+
+    synchronized UncoloredRegions copy() {
+        return new UncoloredRegions(layout, tileLabels.clone(), dirty.clone(), versions.clone(), regions);
+    }
+
+    void adopt(UncoloredRegions other) {
+        TileLabels[] otherLabels;
+        boolean[] otherDirty;
+        int[] otherVersions;
+        synchronized (other) {
+            otherLabels = other.tileLabels.clone();
+            otherDirty = other.dirty.clone();
+            otherVersions = other.versions.clone();
+        }
+        synchronized (this) {
+            for (int i = 0; i < dirty.length; i++) {
+                if (!dirty[i] || otherDirty[i] || versions[i] != otherVersions[i]) continue;
+                tileLabels[i] = otherLabels[i];
+                dirty[i] = false;
+                regions = null;
+            }
+        }
+    }
+
+    synchronized List<UncoloredRegion> getRegions(AtomicReferenceArray<CoverageTile> tiles, CoverageMask mask) {
+        if (regions != null) return regions;
+        long[] fillable = new long[WORDS_PER_ROW * SIZE];
+        for (int index = 0; index < dirty.length; index++) {
+            if (!dirty[index]) continue;
+            dirty[index] = false;
+            int tileX = index % layout.getTilesX();
+            int tileY = index / layout.getTilesX();
+            long[] maskWords = mask.getTileWords(tileX, tileY);
+            if (maskWords == null) {
+                tileLabels[index] = null;
+                continue;
+            }
+            CoverageTile tile = tiles.get(index);
+            if (tile == null) Arrays.fill(fillable, 0);
+            else tile.copyRows(0, SIZE, LongBuffer.wrap(fillable));
+            for (int i = 0; i < fillable.length; i++) fillable[i] = maskWords[i] & ~fillable[i];
+            int width = Math.min(SIZE, layout.getWidth() - tileX * SIZE);
+            int height = Math.min(SIZE, layout.getHeight() - tileY * SIZE);
+            tileLabels[index] = TileLabels.compute(fillable, width, height);
+        }
+        regions = mergeTiles();
+        return regions;
+    }
+
+    private List<UncoloredRegion> mergeTiles() {
+        int[] base = new int[tileLabels.length];
+        int total = 0;
+        for (int i = 0; i < tileLabels.length; i++) {
+            base[i] = total;
+            if (tileLabels[i] != null) total += tileLabels[i].componentCount;
+        }
+        int tilesX = layout.getTilesX();
+        int tilesY = layout.getTilesY();
+        int[] parent = new int[total];
+        for (int i = 0; i < total; i++) parent[i] = i;
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                int index = tileY * tilesX + tileX;
+                TileLabels labels = tileLabels[index];
+                if (labels == null) continue;
+                TileLabels right = tileX + 1 < tilesX ? tileLabels[index + 1] : null;
+                if (right != null) {
+                    for (int y = 0; y < SIZE; y++)
+                        if (labels.rightLabels[y] >= 0 && right.leftLabels[y] >= 0)
+                            union(parent, base[index] + labels.rightLabels[y], base[index + 1] + right.leftLabels[y]);
+                }
+                TileLabels above = tileY + 1 < tilesY ? tileLabels[index + tilesX] : null;
+                if (above != null) {
+                    IntArray top = labels.topRuns;
+                    IntArray bottom = above.bottomRuns;
+                    for (int i = 0, j = 0; i < top.size && j < bottom.size; ) {
+                        if (top.get(i) < bottom.get(j + 1) && bottom.get(j) < top.get(i + 1))
+                            union(parent, base[index] + top.get(i + 2), base[index + tilesX] + bottom.get(j + 2));
+                        if (top.get(i + 1) < bottom.get(j + 1)) i += 3;
+                        else j += 3;
+                    }
+                }
+            }
+        }
+        int[] area = new int[total];
+        int[] seeds = new int[total * 2];
+        int[] bounds = new int[total * 4];
+        Arrays.fill(bounds, -1);
+        for (int index = 0; index < tileLabels.length; index++) {
+            TileLabels labels = tileLabels[index];
+            if (labels == null) continue;
+            int originX = index % tilesX * SIZE;
+            int originY = index / tilesX * SIZE;
+            for (int c = 0; c < labels.componentCount; c++) {
+                int root = find(parent, base[index] + c);
+                area[root] += labels.area[c];
+                int minX = originX + labels.bounds[c * 4];
+                int minY = originY + labels.bounds[c * 4 + 1];
+                int maxX = originX + labels.bounds[c * 4 + 2];
+                int maxY = originY + labels.bounds[c * 4 + 3];
+                if (root == base[index] + c) {
+                    seeds[root * 2] = originX + labels.seeds[c * 2];
+                    seeds[root * 2 + 1] = originY + labels.seeds[c * 2 + 1];
+                }
+                if (bounds[root * 4] < 0) {
+                    bounds[root * 4] = minX;
+                    bounds[root * 4 + 1] = minY;
+                    bounds[root * 4 + 2] = maxX;
+                    bounds[root * 4 + 3] = maxY;
+                } else {
+                    bounds[root * 4] = Math.min(bounds[root * 4], minX);
+                    bounds[root * 4 + 1] = Math.min(bounds[root * 4 + 1], minY);
+                    bounds[root * 4 + 2] = Math.max(bounds[root * 4 + 2], maxX);
+                    bounds[root * 4 + 3] = Math.max(bounds[root * 4 + 3], maxY);
+                }
+            }
+        }
+        List<UncoloredRegion> result = new ArrayList<>();
+        for (int i = 0; i < total; i++)
+            if (parent[i] == i) result.add(new UncoloredRegion(area[i], bounds[i * 4], bounds[i * 4 + 1], bounds[i * 4 + 2], bounds[i * 4 + 3], seeds[i * 2], seeds[i * 2 + 1]));
+        result.sort(Comparator.comparingInt(UncoloredRegion::getArea).reversed());
+        return Collections.unmodifiableList(result);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    private static class TileLabels {
+        private int componentCount;
+        private int[] area;
+        private int[] bounds;
+        private int[] seeds;
+        private final int[] leftLabels = new int[SIZE];
+        private final int[] rightLabels = new int[SIZE];
+        private final IntArray bottomRuns = new IntArray();
+        private final IntArray topRuns = new IntArray();
+
+        private static TileLabels compute(long[] fillable, int width, int height) {
+            TileLabels labels = new TileLabels();
+            Arrays.fill(labels.leftLabels, -1);
+            Arrays.fill(labels.rightLabels, -1);
+            IntArray runs = new IntArray();
+            IntArray parent = new IntArray();
+            int previousStart = 0;
+            for (int y = 0; y < height; y++) {
+                int rowStart = runs.size;
+                int previous = previousStart;
+                int x = nextBit(fillable, y, 0, width, true);
+                while (x < width) {
+                    int end = nextBit(fillable, y, x, width, false);
+                    int label = parent.size;
+                    parent.add(label);
+                    while (previous < rowStart && runs.get(previous + 2) <= x) previous += 4;
+                    for (int p = previous; p < rowStart && runs.get(p + 1) < end; p += 4)
+                        union(parent.items, label, runs.get(p + 3));
+                    runs.add(y, x, end, label);
+                    x = nextBit(fillable, y, end, width, true);
+                }
+                previousStart = rowStart;
+            }
+            int[] componentIds = new int[parent.size];
+            Arrays.fill(componentIds, -1);
+            for (int i = 0; i < parent.size; i++) {
+                int root = find(parent.items, i);
+                if (componentIds[root] < 0) componentIds[root] = labels.componentCount++;
+                componentIds[i] = componentIds[root];
+            }
+            labels.area = new int[labels.componentCount];
+            labels.bounds = new int[labels.componentCount * 4];
+            labels.seeds = new int[labels.componentCount * 2];
+            for (int c = 0; c < labels.componentCount; c++) {
+                labels.bounds[c * 4] = labels.bounds[c * 4 + 1] = Integer.MAX_VALUE;
+            }
+            for (int r = 0; r < runs.size; r += 4) {
+                int y = runs.get(r);
+                int start = runs.get(r + 1);
+                int end = runs.get(r + 2);
+                int c = componentIds[runs.get(r + 3)];
+                if (labels.area[c] == 0) {
+                    labels.seeds[c * 2] = start;
+                    labels.seeds[c * 2 + 1] = y;
+                }
+                labels.area[c] += end - start;
+                labels.bounds[c * 4] = Math.min(labels.bounds[c * 4], start);
+                labels.bounds[c * 4 + 1] = Math.min(labels.bounds[c * 4 + 1], y);
+                labels.bounds[c * 4 + 2] = Math.max(labels.bounds[c * 4 + 2], end);
+                labels.bounds[c * 4 + 3] = Math.max(labels.bounds[c * 4 + 3], y + 1);
+                if (start == 0) labels.leftLabels[y] = c;
+                if (end == width) labels.rightLabels[y] = c;
+                if (y == 0) labels.bottomRuns.add(start, end, c);
+                if (y == height - 1) labels.topRuns.add(start, end, c);
+            }
+            return labels;
+        }
+
+        private static int nextBit(long[] words, int y, int x, int width, boolean value) {
+            int rowOffset = y * WORDS_PER_ROW;
+            while (x < width) {
+                long word = words[rowOffset + (x >> 6)];
+                if (!value) word = ~word;
+                word &= -1L << x;
+                if (word != 0) return Math.min((x & ~63) + Long.numberOfTrailingZeros(word), width);
+                x = (x & ~63) + 64;
+            }
+            return width;
+        }
+    }
+}
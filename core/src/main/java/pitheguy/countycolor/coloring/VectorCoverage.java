@@ -0,0 +1,385 @@
+package pitheguy.countycolor.coloring;
+
+import clipper2.Clipper;
+import clipper2.core.*;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import pitheguy.countycolor.util.Util;
+
+import java.io.*;
+import java.util.*;
+
+import static pitheguy.countycolor.render.util.RenderConst.COLORING_RESOLUTION;
+
+// Painted area kept as a Clipper2 polygon union in world units scaled by SCALE. Every path set held here is treated as
+// immutable once assigned, so copies and background readers can share them.
+public class VectorCoverage {
+    public static final double SCALE = 100;
+    private static final double DEFAULT_CELL_SIZE = SCALE / COLORING_RESOLUTION;
+    private static final double SIMPLIFY_EPSILON = DEFAULT_CELL_SIZE / 4;
+    private static final double ARC_TOLERANCE = DEFAULT_CELL_SIZE / 2;
+    private static final int MAX_ARC_SEGMENTS = 64;
+    private volatile Paths64 coverage;
+    private volatile Paths64 uncovered = new Paths64();
+    private Paths64 county = new Paths64();
+    private double countyArea;
+    private volatile double uncoveredArea;
+    private int simplifiedVertexCount;
+    private int version;
+    private Paths64 strokeCapsules;
+    private Paths64 recording;
+    private final StrokeLog<Paths64> strokeLog = new StrokeLog<>(paths -> (long) countVertices(paths) * 2 * Long.BYTES);
+
+    public VectorCoverage() {
+        this(new Paths64());
+    }
+
+    private VectorCoverage(Paths64 coverage) {
+        this.coverage = coverage;
+        this.simplifiedVertexCount = countVertices(coverage);
+    }
+
+    public static VectorCoverage fromEncodedString(String encoded) {
+        return new VectorCoverage(decode(Base64.getDecoder().decode(encoded)));
+    }
+
+    public static VectorCoverage fromRuns(IntArray runs, GridLayout layout) {
+        Paths64 rectangles = new Paths64();
+        Map<Long, Integer> open = new HashMap<>();
+        int y = -1;
+        for (int i = 0; i <= runs.size; i += 3) {
+            int runY = i < runs.size ? runs.get(i) : Integer.MAX_VALUE;
+            if (runY != y) {
+                Map<Long, Integer> next = new HashMap<>();
+                for (int j = i; j < runs.size && runs.get(j) == runY; j += 3) {
+                    long key = (long) runs.get(j + 1) << 32 | runs.get(j + 2);
+                    Integer startY = runY == y + 1 ? open.remove(key) : null;
+                    next.put(key, startY == null ? runY : startY);
+                }
+                for (Map.Entry<Long, Integer> entry : open.entrySet())
+                    rectangles.add(rectangle(layout, (int) (entry.getKey() >>> 32), entry.getValue(), (int) (long) entry.getKey(), y + 1));
+                open = next;
+                y = runY;
+            }
+        }
+        VectorCoverage coverage = new VectorCoverage(Clipper.Union(rectangles, FillRule.NonZero));
+        coverage.simplify();
+        return coverage;
+    }
+
+    public void setCounty(Paths64 county) {
+        this.county = county;
+        countyArea = Math.abs(Clipper.Area(county));
+        updateUncovered();
+    }
+
+    public void beginStroke() {
+        strokeCapsules = new Paths64();
+        recording = new Paths64();
+    }
+
+    public void addCapsule(Vector2 from, Vector2 to, float radius) {
+        Path64 capsule = capsule(from, to, radius);
+        if (strokeCapsules != null) strokeCapsules.add(capsule);
+        else {
+            Paths64 paths = new Paths64();
+            paths.add(capsule);
+            add(paths);
+        }
+    }
+
+    public void endStroke() {
+        if (recording == null) return;
+        if (!strokeCapsules.isEmpty()) recording.addAll(add(Clipper.Union(strokeCapsules, FillRule.NonZero)));
+        if (!recording.isEmpty()) strokeLog.push(recording);
+        strokeCapsules = null;
+        recording = null;
+    }
+
+    // Fills the uncovered pocket around pos, leaving the painted islands in it and any pockets inside those alone
+    public boolean fill(Vector2 pos) {
+        Point64 point = toPoint(pos);
+        Paths64 uncovered = this.uncovered;
+        double[] areas = getAreas(uncovered);
+        int component = -1;
+        int containing = 0;
+        for (int i = 0; i < uncovered.size(); i++) {
+            if (Clipper.PointInPolygon(point, uncovered.get(i)) != PointInPolygonResult.IsInside) continue;
+            containing++;
+            if (component < 0 || areas[i] < areas[component]) component = i;
+        }
+        if (containing % 2 == 0) return false;
+        return applyFill(withHoles(uncovered, findParents(uncovered, areas), component, new Paths64()));
+    }
+
+    // Uncovered pockets no larger than maxArea grid cells, each with its holes. Safe to call off the render thread.
+    public Paths64 findSlivers(int maxArea, GridLayout layout) {
+        Paths64 uncovered = this.uncovered;
+        int count = uncovered.size();
+        double[] areas = getAreas(uncovered);
+        int[] parents = findParents(uncovered, areas);
+        double[] netAreas = areas.clone();
+        for (int i = 0; i < count; i++)
+            if (parents[i] >= 0) netAreas[parents[i]] -= areas[i];
+        double cellSize = SCALE / layout.getResolution();
+        double maxScaledArea = maxArea * cellSize * cellSize;
+        Paths64 slivers = new Paths64();
+        for (int i = 0; i < count; i++)
+            if (getDepth(parents, i) % 2 == 0 && netAreas[i] <= maxScaledArea) withHoles(uncovered, parents, i, slivers);
+        return slivers;
+    }
+
+    // Like ColoringGrid.applySliverRuns, the slivers join the newest undo entry
+    public boolean applySlivers(Paths64 slivers) {
+        if (slivers.isEmpty()) return false;
+        if (recording != null) return applyFill(slivers);
+        recording = new Paths64();
+        boolean filled = applyFill(slivers);
+        if (!recording.isEmpty()) strokeLog.amend(recording, Paths64::addAll);
+        recording = null;
+        return filled;
+    }
+
+    public boolean undo() {
+        Paths64 added = strokeLog.undo();
+        if (added == null) return false;
+        setCoverage(Clipper.Difference(coverage, added, FillRule.NonZero));
+        return true;
+    }
+
+    public boolean redo() {
+        Paths64 added = strokeLog.redo();
+        if (added == null) return false;
+        setCoverage(Clipper.Union(coverage, added, FillRule.NonZero));
+        return true;
+    }
+
+    public IntArray toRuns(GridLayout layout) {
+        return rasterize(coverage, layout);
+    }
+
+    public float getCompletion() {
+        if (countyArea == 0) return 0;
+        if (uncovered.isEmpty()) return 1;
+        return (float) MathUtils.clamp(1 - uncoveredArea / countyArea, 0, 1);
+    }
+
+    public Paths64 getCoverage() {
+        return coverage;
+    }
+
+    public Paths64 getStrokeCapsules() {
+        return strokeCapsules;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String asEncodedString() {
+        return Base64.getEncoder().encodeToString(encode(coverage));
+    }
+
+    public VectorCoverage copy() {
+        return new VectorCoverage(coverage);
+    }
+
+    public static Point64 toPoint(Vector2 world) {
+        return new Point64(world.x * SCALE, world.y * SCALE);
+    }
+
+    private boolean applyFill(Paths64 rings) {
+        Paths64 added = add(Clipper.Intersect(rings, county, FillRule.NonZero));
+        if (recording != null) recording.addAll(added);
+        return !added.isEmpty();
+    }
+
+    private Paths64 add(Paths64 shape) {
+        Paths64 added = Clipper.Difference(shape, coverage, FillRule.NonZero);
+        if (added.isEmpty()) return added;
+        setCoverage(Clipper.Union(coverage, added, FillRule.NonZero));
+        if (countVertices(coverage) > simplifiedVertexCount * 2 + 1000) simplify();
+        return added;
+    }
+
+    private void simplify() {
+        setCoverage(Clipper.SimplifyPaths(coverage, SIMPLIFY_EPSILON));
+        simplifiedVertexCount = countVertices(coverage);
+    }
+
+    private void setCoverage(Paths64 coverage) {
+        this.coverage = coverage;
+        version++;
+        updateUncovered();
+    }
+
+    private void updateUncovered() {
+        if (county.isEmpty()) return;
+        Paths64 uncovered = Clipper.Difference(county, coverage, FillRule.NonZero);
+        uncoveredArea = Math.abs(Clipper.Area(uncovered));
+        this.uncovered = uncovered;
+    }
+
+    private static double[] getAreas(Paths64 rings) {
+        double[] areas = new double[rings.size()];
+        for (int i = 0; i < areas.length; i++) areas[i] = Math.abs(Clipper.Area(rings.get(i)));
+        return areas;
+    }
+
+    // Index of the smallest ring containing each ring, or -1 for outer rings
+    private static int[] findParents(Paths64 rings, double[] areas) {
+        int count = rings.size();
+        long[][] bounds = new long[count][];
+        for (int i = 0; i < count; i++) bounds[i] = getBounds(rings.get(i));
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = -1;
+            Point64 point = rings.get(i).get(0);
+            for (int j = 0; j < count; j++) {
+                if (j == i || areas[j] <= areas[i] || (parents[i] >= 0 && areas[j] >= areas[parents[i]])) continue;
+                if (point.x < bounds[j][0] || point.y < bounds[j][1] || point.x > bounds[j][2] || point.y > bounds[j][3]) continue;
+                if (Clipper.PointInPolygon(point, rings.get(j)) == PointInPolygonResult.IsInside) parents[i] = j;
+            }
+        }
+        return parents;
+    }
+
+    // The ring plus the islands directly inside it, whose opposite winding cuts them out under NonZero
+    private static Paths64 withHoles(Paths64 rings, int[] parents, int index, Paths64 destination) {
+        destination.add(rings.get(index));
+        for (int i = 0; i < rings.size(); i++)
+            if (parents[i] == index) destination.add(rings.get(i));
+        return destination;
+    }
+
+    private static int getDepth(int[] parents, int index) {
+        int depth = 0;
+        for (int i = parents[index]; i >= 0; i = parents[i]) depth++;
+        return depth;
+    }
+
+    private static Path64 capsule(Vector2 from, Vector2 to, float radius) {
+        double scaledRadius = radius * SCALE;
+        float angle = from.epsilonEquals(to) ? 0 : MathUtils.atan2(to.y - from.y, to.x - from.x);
+        int segments = MAX_ARC_SEGMENTS;
+        if (scaledRadius > ARC_TOLERANCE) segments = (int) Math.ceil(Math.PI / Math.acos(1 - ARC_TOLERANCE / scaledRadius));
+        segments = MathUtils.clamp(segments, 4, MAX_ARC_SEGMENTS);
+        Path64 path = new Path64((segments + 1) * 2);
+        for (int i = 0; i <= segments; i++) {
+            double a = angle - Math.PI / 2 + Math.PI * i / segments;
+            path.add(new Point64(to.x * SCALE + Math.cos(a) * scaledRadius, to.y * SCALE + Math.sin(a) * scaledRadius));
+        }
+        for (int i = 0; i <= segments; i++) {
+            double a = angle + Math.PI / 2 + Math.PI * i / segments;
+            path.add(new Point64(from.x * SCALE + Math.cos(a) * scaledRadius, from.y * SCALE + Math.sin(a) * scaledRadius));
+        }
+        return path;
+    }
+
+    private static Path64 rectangle(GridLayout layout, int startX, int startY, int endX, int endY) {
+        Path64 path = new Path64(4);
+        path.add(new Point64(layout.toWorldX(startX) * SCALE, layout.toWorldY(startY) * SCALE));
+        path.add(new Point64(layout.toWorldX(endX) * SCALE, layout.toWorldY(startY) * SCALE));
+        path.add(new Point64(layout.toWorldX(endX) * SCALE, layout.toWorldY(endY) * SCALE));
+        path.add(new Point64(layout.toWorldX(startX) * SCALE, layout.toWorldY(endY) * SCALE));
+        return path;
+    }
+
+    // Even-odd scanline fill sampled at cell centers, producing (y, startX, endX) runs like ColoringGrid's stroke log
+    private static IntArray rasterize(Paths64 paths, GridLayout layout) {
+        List<double[]> edges = new ArrayList<>();
+        for (Path64 path : paths) {
+            for (int i = 0, j = path.size() - 1; i < path.size(); j = i++) {
+                double x1 = layout.toGridX((float) (path.get(j).x / SCALE));
+                double y1 = layout.toGridY((float) (path.get(j).y / SCALE));
+                double x2 = layout.toGridX((float) (path.get(i).x / SCALE));
+                double y2 = layout.toGridY((float) (path.get(i).y / SCALE));
+                if (y1 != y2) edges.add(new double[]{x1, y1, x2, y2, Math.min(y1, y2), Math.max(y1, y2)});
+            }
+        }
+        edges.sort(Comparator.comparingDouble(edge -> edge[4]));
+        IntArray runs = new IntArray();
+        List<double[]> active = new ArrayList<>();
+        double[] intersections = new double[16];
+        int next = 0;
+        for (int y = 0; y < layout.getHeight(); y++) {
+            double sampleY = y + 0.5;
+            while (next < edges.size() && edges.get(next)[4] <= sampleY) active.add(edges.get(next++));
+            active.removeIf(edge -> edge[5] <= sampleY);
+            if (active.isEmpty()) continue;
+            if (intersections.length < active.size()) intersections = new double[active.size() * 2];
+            int count = 0;
+            for (double[] edge : active)
+                intersections[count++] = edge[0] + (sampleY - edge[1]) * (edge[2] - edge[0]) / (edge[3] - edge[1]);
+            Arrays.sort(intersections, 0, count);
+            for (int i = 0; i + 1 < count; i += 2) {
+                int startX = Math.max((int) Math.ceil(intersections[i] - 0.5), 0);
+                int endX = Math.min((int) Math.floor(intersections[i + 1] - 0.5) + 1, layout.getWidth());
+                if (startX < endX) runs.add(y, startX, endX);
+            }
+        }
+        return runs;
+    }
+
+    private static long[] getBounds(Path64 path) {
+        long[] bounds = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+        for (Point64 point : path) {
+            bounds[0] = Math.min(bounds[0], point.x);
+            bounds[1] = Math.min(bounds[1], point.y);
+            bounds[2] = Math.max(bounds[2], point.x);
+            bounds[3] = Math.max(bounds[3], point.y);
+        }
+        return bounds;
+    }
+
+    private static int countVertices(Paths64 paths) {
+        int count = 0;
+        for (Path64 path : paths) count += path.size();
+        return count;
+    }
+
+    private static byte[] encode(Paths64 paths) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Util.writeVarInt(paths.size(), stream);
+        long lastX = 0;
+        long lastY = 0;
+        for (Path64 path : paths) {
+            Util.writeVarInt(path.size(), stream);
+            for (Point64 point : path) {
+                Util.writeVarInt(zigZag(point.x - lastX), stream);
+                Util.writeVarInt(zigZag(point.y - lastY), stream);
+                lastX = point.x;
+                lastY = point.y;
+            }
+        }
+        return Util.compress(stream.toByteArray());
+    }
+
+    private static Paths64 decode(byte[] data) {
+        ByteArrayInputStream stream = new ByteArrayInputStream(Util.decompress(data));
+        int pathCount = Util.readVarInt(stream);
+        Paths64 paths = new Paths64();
+        long x = 0;
+        long y = 0;
+        for (int i = 0; i < pathCount; i++) {
+            int size = Util.readVarInt(stream);
+            Path64 path = new Path64(size);
+            for (int j = 0; j < size; j++) {
+                x += unZigZag(Util.readVarInt(stream));
+                y += unZigZag(Util.readVarInt(stream));
+                path.add(new Point64(x, y));
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    private static int zigZag(long value) {
+        return (int) ((value << 1) ^ (value >> 63));
+    }
+
+    private static long unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -1,21 +1,32 @@
 package pitheguy.countycolor.coloring.history;
 
+import pitheguy.countycolor.coloring.ColoringGrid;
 import pitheguy.countycolor.coloring.MapColor;
+import pitheguy.countycolor.coloring.storage.ChunkedBitmap;
 import pitheguy.countycolor.util.Util;
 
 import java.io.*;
 import java.util.*;
-
-import static pitheguy.countycolor.render.util.RenderConst.COLORING_SIZE;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ColoringHistory {
     public static final int MAX_SNAPSHOTS = 30;
-    private final List<HistorySnapshot> snapshots = new ArrayList<>();
+    private final List<HistorySnapshot> snapshots = new CopyOnWriteArrayList<>();
 
     public void addSnapshot(HistorySnapshot snapshot) {
         snapshots.add(snapshot);
     }
 
+    public void removeSnapshotsNotIn(ColoringGrid grid) {
+        ChunkedBitmap current = HistorySnapshot.sample(grid);
+        while (!snapshots.isEmpty()) {
+            HistorySnapshot last = snapshots.get(snapshots.size() - 1);
+            if (last.getBitmap().andNot(current).isEmpty()) return;
+            snapshots.remove(snapshots.size() - 1);
+            last.dispose();
+        }
+    }
+
     public List<HistorySnapshot> getSnapshots() {
         return snapshots;
     }
@@ -24,11 +35,10 @@ public class ColoringHistory {
         if (snapshots.isEmpty()) return new byte[0];
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         DataOutputStream data = new DataOutputStream(stream);
-        BitSet previousBits = new BitSet((COLORING_SIZE / HistorySnapshot.DOWNSCALE_FACTOR) * (COLORING_SIZE / HistorySnapshot.DOWNSCALE_FACTOR));
+        ChunkedBitmap previousBits = new ChunkedBitmap(HistorySnapshot.DOWNSCALED_SIZE * HistorySnapshot.DOWNSCALED_SIZE);
         for (HistorySnapshot snapshot : new ArrayList<>(snapshots)) {
-            BitSet currentBits = snapshot.getBitSet();
-            BitSet diffBits = (BitSet) currentBits.clone();
-            diffBits.andNot(previousBits);
+            ChunkedBitmap currentBits = snapshot.getBitmap();
+            ChunkedBitmap diffBits = currentBits.andNot(previousBits);
             int index = diffBits.nextSetBit(0);
             List<Integer> nums = new ArrayList<>();
             while (index != -1) {
@@ -49,7 +59,7 @@ public class ColoringHistory {
         ColoringHistory history = new ColoringHistory();
         ByteArrayInputStream stream = new ByteArrayInputStream(Util.decompress(data));
         DataInputStream dataStream = new DataInputStream(stream);
-        BitSet currentBits = new BitSet((COLORING_SIZE / HistorySnapshot.DOWNSCALE_FACTOR) * (COLORING_SIZE / HistorySnapshot.DOWNSCALE_FACTOR));
+        ChunkedBitmap currentBits = new ChunkedBitmap(HistorySnapshot.DOWNSCALED_SIZE * HistorySnapshot.DOWNSCALED_SIZE);
         while (stream.available() > 0) {
             int numRecords = Util.readVarInt(stream);
             for (int i = 0; i < numRecords; i++) {
@@ -57,7 +67,9 @@ public class ColoringHistory {
                 int length = Util.readVarInt(dataStream);
                 currentBits.set(index, index + length);
             }
-            history.snapshots.add(new HistorySnapshot((BitSet) currentBits.clone(), color));
+            ChunkedBitmap snapshotBits = currentBits.copy();
+            snapshotBits.optimize();
+            history.snapshots.add(new HistorySnapshot(snapshotBits, color));
             if (history.snapshots.size() > MAX_SNAPSHOTS) throw new IllegalStateException("Too many snapshots!");
         }
         return history;
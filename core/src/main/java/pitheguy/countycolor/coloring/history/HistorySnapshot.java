@@ -1,46 +1,84 @@
 package pitheguy.countycolor.coloring.history;
 
 import com.badlogic.gdx.graphics.*;
+import pitheguy.countycolor.coloring.BitKernels;
 import pitheguy.countycolor.coloring.ColoringGrid;
+import pitheguy.countycolor.coloring.CoverageTile;
+import pitheguy.countycolor.coloring.GridLayout;
 import pitheguy.countycolor.coloring.MapColor;
-
-import java.util.BitSet;
+import pitheguy.countycolor.coloring.storage.ChunkedBitmap;
 
 import static pitheguy.countycolor.render.util.RenderConst.COLORING_SIZE;
+import static pitheguy.countycolor.render.util.RenderConst.RENDER_SIZE;
 
 public class HistorySnapshot {
     public static final int DOWNSCALE_FACTOR = 4;
     public static final int DOWNSCALED_SIZE = COLORING_SIZE / DOWNSCALE_FACTOR;
-    private final BitSet bitSet;
+    private final ChunkedBitmap bitmap;
     private Pixmap pixmap;
     private Texture texture;
 
     public HistorySnapshot(ColoringGrid grid) {
-        this.bitSet = new BitSet(DOWNSCALED_SIZE * DOWNSCALED_SIZE);
-        for (int y = 0; y < DOWNSCALED_SIZE; y++)
-            for (int x = 0; x < DOWNSCALED_SIZE; x++)
-                if (grid.get(x * DOWNSCALE_FACTOR, y * DOWNSCALE_FACTOR))
-                    bitSet.set(y * DOWNSCALED_SIZE + x);
-        pixmap = new Pixmap(DOWNSCALED_SIZE, DOWNSCALED_SIZE, Pixmap.Format.RGBA8888);
-        pixmap.setColor(Color.WHITE);
-        pixmap.fill();
-        pixmap.setColor(grid.getColor().getColor());
-        for (int i = 0; i < this.bitSet.length(); i++)
-            if (this.bitSet.get(i)) pixmap.drawPixel(i % DOWNSCALED_SIZE, DOWNSCALED_SIZE - i / DOWNSCALED_SIZE);
+        this(sample(grid), grid.getColor());
     }
 
-    public HistorySnapshot(BitSet bitSet, MapColor color) {
-        this.bitSet = bitSet;
+    public HistorySnapshot(ChunkedBitmap bitmap, MapColor color) {
+        this.bitmap = bitmap;
         pixmap = new Pixmap(DOWNSCALED_SIZE, DOWNSCALED_SIZE, Pixmap.Format.RGBA8888);
         pixmap.setColor(Color.WHITE);
         pixmap.fill();
         pixmap.setColor(color.getColor());
-        for (int i = 0; i < this.bitSet.length(); i++)
-            if (this.bitSet.get(i)) pixmap.drawPixel(i % DOWNSCALED_SIZE, DOWNSCALED_SIZE - i / DOWNSCALED_SIZE);
+        int start = bitmap.nextSetBit(0);
+        while (start != -1) {
+            int end = bitmap.nextClearBit(start);
+            for (int i = start; i < end; i++) pixmap.drawPixel(i % DOWNSCALED_SIZE, DOWNSCALED_SIZE - i / DOWNSCALED_SIZE);
+            start = bitmap.nextSetBit(end);
+        }
+    }
+
+    // Gathers the sampled cells of each row straight from the tile words rather than looking every cell up
+    public static ChunkedBitmap sample(ColoringGrid grid) {
+        GridLayout layout = grid.getLayout();
+        int rowWords = layout.getTilesX() * CoverageTile.WORDS_PER_ROW;
+        // Samples outside the grid read the extra word at the end of the row, which is always empty
+        int[] wordIndices = new int[DOWNSCALED_SIZE];
+        long[] shifts = new long[DOWNSCALED_SIZE];
+        for (int x = 0; x < DOWNSCALED_SIZE; x++) {
+            int gridX = toGrid(x, layout.getResolution(), layout.getWidth());
+            boolean inside = gridX >= 0 && gridX < layout.getWidth();
+            wordIndices[x] = inside ? gridX >> 6 : rowWords;
+            shifts[x] = inside ? gridX & 63 : 0;
+        }
+        long[] row = new long[rowWords + 1];
+        long[] sampled = new long[(DOWNSCALED_SIZE + 63) >> 6];
+        ChunkedBitmap bitmap = new ChunkedBitmap(DOWNSCALED_SIZE * DOWNSCALED_SIZE);
+        for (int y = 0; y < DOWNSCALED_SIZE; y++) {
+            int gridY = toGrid(y, layout.getResolution(), layout.getHeight());
+            if (gridY < 0 || gridY >= layout.getHeight()) continue;
+            grid.copyRowWords(gridY, row);
+            BitKernels.INSTANCE.gatherBits(row, wordIndices, shifts, sampled, DOWNSCALED_SIZE);
+            int rowOffset = y * DOWNSCALED_SIZE;
+            for (int word = 0; word < sampled.length; word++) {
+                long bits = sampled[word];
+                while (bits != 0) {
+                    int start = Long.numberOfTrailingZeros(bits);
+                    int length = Long.numberOfTrailingZeros(~(bits >>> start));
+                    bits = length == 64 ? 0 : bits & ~(((1L << length) - 1) << start);
+                    bitmap.set(rowOffset + word * 64 + start, rowOffset + word * 64 + start + length);
+                }
+            }
+        }
+        bitmap.optimize();
+        return bitmap;
+    }
+
+    // Snapshots always span the whole render area, so history stays comparable whatever the county's grid layout
+    private static int toGrid(int sample, int resolution, int gridSize) {
+        return sample * RENDER_SIZE * resolution / DOWNSCALED_SIZE - RENDER_SIZE * resolution / 2 + gridSize / 2;
     }
 
-    public BitSet getBitSet() {
-        return bitSet;
+    public ChunkedBitmap getBitmap() {
+        return bitmap;
     }
 
     public Texture getTexture() {
@@ -69,6 +107,6 @@ public class HistorySnapshot {
         if (obj == this) return true;
         if (!(obj instanceof HistorySnapshot)) return false;
         HistorySnapshot other = (HistorySnapshot) obj;
-        return bitSet.equals(other.bitSet);
+        return bitmap.equals(other.bitmap);
     }
 }
@@ -0,0 +1,104 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.util.Arrays;
+
+class ArrayContainer extends Container {
+    static final int MAX_SIZE = 4096;
+    private char[] values;
+
+    private ArrayContainer(char[] values) {
+        this.values = values;
+    }
+
+    static ArrayContainer fromWords(long[] words, int cardinality) {
+        char[] values = new char[cardinality];
+        int index = 0;
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                values[index++] = (char) (word * 64 + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return new ArrayContainer(values);
+    }
+
+    @Override
+    boolean get(int index) {
+        return Arrays.binarySearch(values, (char) index) >= 0;
+    }
+
+    @Override
+    long getWord(int word) {
+        long bits = 0;
+        for (int i = lowerBound(word * 64); i < values.length && values[i] < word * 64 + 64; i++) bits |= 1L << values[i];
+        return bits;
+    }
+
+    @Override
+    Container add(int start, int end) {
+        int first = lowerBound(start);
+        int last = lowerBound(end);
+        int cardinality = values.length - (last - first) + (end - start);
+        if (cardinality > MAX_SIZE) return new BitmapContainer(toWords(), values.length).add(start, end);
+        char[] result = new char[cardinality];
+        System.arraycopy(values, 0, result, 0, first);
+        for (int i = start; i < end; i++) result[first + i - start] = (char) i;
+        System.arraycopy(values, last, result, first + end - start, values.length - last);
+        values = result;
+        return this;
+    }
+
+    @Override
+    Container remove(int start, int end) {
+        int first = lowerBound(start);
+        int last = lowerBound(end);
+        if (first == last) return this;
+        if (last - first == values.length) return null;
+        char[] result = new char[values.length - (last - first)];
+        System.arraycopy(values, 0, result, 0, first);
+        System.arraycopy(values, last, result, first, values.length - last);
+        values = result;
+        return this;
+    }
+
+    @Override
+    int cardinality() {
+        return values.length;
+    }
+
+    @Override
+    int nextSetBit(int index) {
+        int i = lowerBound(index);
+        return i < values.length ? values[i] : -1;
+    }
+
+    @Override
+    int nextClearBit(int index) {
+        for (int i = lowerBound(index); i < values.length && values[i] == index; i++) index++;
+        return index;
+    }
+
+    @Override
+    long[] toWords() {
+        long[] words = new long[WORDS];
+        for (char value : values) words[value >> 6] |= 1L << value;
+        return words;
+    }
+
+    @Override
+    Container copy() {
+        return new ArrayContainer(values);
+    }
+
+    private int lowerBound(int index) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < index) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,79 @@
+package pitheguy.countycolor.coloring.storage;
+
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+
+class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    boolean get(int index) {
+        return (words[index >> 6] & (1L << index)) != 0;
+    }
+
+    @Override
+    long getWord(int word) {
+        return words[word];
+    }
+
+    @Override
+    Container add(int start, int end) {
+        for (int word = start >> 6; word <= (end - 1) >> 6; word++) {
+            long mask = getRangeMask(word, start, end);
+            cardinality += Long.bitCount(mask & ~words[word]);
+            words[word] |= mask;
+        }
+        return cardinality == SIZE ? FullContainer.INSTANCE : this;
+    }
+
+    @Override
+    Container remove(int start, int end) {
+        for (int word = start >> 6; word <= (end - 1) >> 6; word++) {
+            long mask = getRangeMask(word, start, end);
+            cardinality -= Long.bitCount(mask & words[word]);
+            words[word] &= ~mask;
+        }
+        if (cardinality == 0) return null;
+        return cardinality <= ArrayContainer.MAX_SIZE ? ArrayContainer.fromWords(words, cardinality) : this;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    int nextSetBit(int index) {
+        int next = nextBit(words, index, true);
+        return next < SIZE ? next : -1;
+    }
+
+    @Override
+    int nextClearBit(int index) {
+        return nextBit(words, index, false);
+    }
+
+    @Override
+    long[] toWords() {
+        return words.clone();
+    }
+
+    @Override
+    Container copy() {
+        return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    static int nextBit(long[] words, int index, boolean value) {
+        for (int word = index >> 6; word < words.length; word++) {
+            long bits = value ? words[word] : ~words[word];
+            if (word == index >> 6) bits &= -1L << index;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return words.length * 64;
+    }
+}
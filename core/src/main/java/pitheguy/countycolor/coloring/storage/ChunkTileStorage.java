@@ -0,0 +1,68 @@
+package pitheguy.countycolor.coloring.storage;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+
+public class ChunkTileStorage implements TileStorage {
+    private ChunkedBitmap bitmap;
+
+    public ChunkTileStorage() {
+        this(new ChunkedBitmap(SIZE * SIZE));
+    }
+
+    private ChunkTileStorage(ChunkedBitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        return bitmap.get(y * SIZE + x);
+    }
+
+    @Override
+    public long getWord(int y, int word) {
+        return bitmap.getWord(y * WORDS_PER_ROW + word);
+    }
+
+    @Override
+    public void setRun(int y, int startX, int endX) {
+        bitmap.set(y * SIZE + startX, y * SIZE + endX);
+    }
+
+    @Override
+    public void clearRun(int y, int startX, int endX) {
+        bitmap.clear(y * SIZE + startX, y * SIZE + endX);
+    }
+
+    @Override
+    public int nextSetBit(int y, int x) {
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = getWord(y, word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int nextClearBit(int y, int x) {
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = ~getWord(y, word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int retainAll(long[] mask) {
+        int cardinality = bitmap.cardinality();
+        bitmap = mask == null ? new ChunkedBitmap(SIZE * SIZE) : bitmap.and(ChunkedBitmap.fromWords(mask));
+        return cardinality - bitmap.cardinality();
+    }
+
+    @Override
+    public TileStorage copy() {
+        return new ChunkTileStorage(bitmap.copy());
+    }
+}
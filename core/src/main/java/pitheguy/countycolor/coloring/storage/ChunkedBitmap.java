@@ -0,0 +1,171 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.util.Arrays;
+
+// Roaring-style bitmap: every 64K-bit chunk is empty, full, or an array, bitmap or run container, whichever is
+// smallest. Copies share containers until either side writes to them.
+public class ChunkedBitmap {
+    private static final int CHUNK_BITS = 16;
+    private final Container[] chunks;
+    private final boolean[] owned;
+
+    public ChunkedBitmap(int size) {
+        this(new Container[(size + Container.SIZE - 1) >>> CHUNK_BITS]);
+    }
+
+    private ChunkedBitmap(Container[] chunks) {
+        this.chunks = chunks;
+        this.owned = new boolean[chunks.length];
+    }
+
+    public static ChunkedBitmap fromWords(long[] words) {
+        ChunkedBitmap bitmap = new ChunkedBitmap(words.length * 64);
+        for (int chunk = 0; chunk < bitmap.chunks.length; chunk++) {
+            long[] chunkWords = Arrays.copyOfRange(words, chunk * Container.WORDS, (chunk + 1) * Container.WORDS);
+            bitmap.chunks[chunk] = Container.fromWords(chunkWords);
+            bitmap.owned[chunk] = true;
+        }
+        return bitmap;
+    }
+
+    public boolean get(int index) {
+        Container container = chunks[index >>> CHUNK_BITS];
+        return container != null && container.get(index & (Container.SIZE - 1));
+    }
+
+    public long getWord(int word) {
+        Container container = chunks[word >>> (CHUNK_BITS - 6)];
+        return container == null ? 0 : container.getWord(word & (Container.WORDS - 1));
+    }
+
+    public void set(int index) {
+        set(index, index + 1);
+    }
+
+    public void set(int start, int end) {
+        while (start < end) {
+            int chunk = start >>> CHUNK_BITS;
+            int chunkStart = chunk << CHUNK_BITS;
+            int chunkEnd = Math.min(end - chunkStart, Container.SIZE);
+            Container container = getWritable(chunk);
+            chunks[chunk] = container == null ? Container.ofRange(start - chunkStart, chunkEnd) : container.add(start - chunkStart, chunkEnd);
+            start = chunkStart + chunkEnd;
+        }
+    }
+
+    public void clear(int start, int end) {
+        while (start < end) {
+            int chunk = start >>> CHUNK_BITS;
+            int chunkStart = chunk << CHUNK_BITS;
+            int chunkEnd = Math.min(end - chunkStart, Container.SIZE);
+            Container container = getWritable(chunk);
+            if (container != null) chunks[chunk] = container.remove(start - chunkStart, chunkEnd);
+            start = chunkStart + chunkEnd;
+        }
+    }
+
+    public int nextSetBit(int index) {
+        for (int chunk = index >>> CHUNK_BITS; chunk < chunks.length; chunk++) {
+            Container container = chunks[chunk];
+            if (container == null) continue;
+            int from = chunk == index >>> CHUNK_BITS ? index & (Container.SIZE - 1) : 0;
+            int next = container.nextSetBit(from);
+            if (next >= 0) return (chunk << CHUNK_BITS) + next;
+        }
+        return -1;
+    }
+
+    public int nextClearBit(int index) {
+        for (int chunk = index >>> CHUNK_BITS; chunk < chunks.length; chunk++) {
+            Container container = chunks[chunk];
+            int from = chunk == index >>> CHUNK_BITS ? index & (Container.SIZE - 1) : 0;
+            if (container == null) return (chunk << CHUNK_BITS) + from;
+            int next = container.nextClearBit(from);
+            if (next < Container.SIZE) return (chunk << CHUNK_BITS) + next;
+        }
+        return Math.max(index, chunks.length << CHUNK_BITS);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (Container container : chunks)
+            if (container != null) cardinality += container.cardinality();
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        for (Container container : chunks)
+            if (container != null) return false;
+        return true;
+    }
+
+    public ChunkedBitmap and(ChunkedBitmap other) {
+        ChunkedBitmap result = new ChunkedBitmap(chunks.length << CHUNK_BITS);
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+            result.share(chunk, Container.and(chunks[chunk], other.getChunk(chunk)), this, other);
+        return result;
+    }
+
+    public ChunkedBitmap andNot(ChunkedBitmap other) {
+        ChunkedBitmap result = new ChunkedBitmap(chunks.length << CHUNK_BITS);
+        for (int chunk = 0; chunk < chunks.length; chunk++)
+            result.share(chunk, Container.andNot(chunks[chunk], other.getChunk(chunk)), this, other);
+        return result;
+    }
+
+    // Re-encodes every chunk in its smallest form, mostly turning bitmaps built up run by run into runs or arrays
+    public void optimize() {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            if (chunks[chunk] == null) continue;
+            chunks[chunk] = Container.fromWords(chunks[chunk].toWords());
+            owned[chunk] = true;
+        }
+    }
+
+    public ChunkedBitmap copy() {
+        Arrays.fill(owned, false);
+        return new ChunkedBitmap(chunks.clone());
+    }
+
+    private Container getWritable(int chunk) {
+        if (!owned[chunk] && chunks[chunk] != null) chunks[chunk] = chunks[chunk].copy();
+        owned[chunk] = true;
+        return chunks[chunk];
+    }
+
+    private Container getChunk(int chunk) {
+        return chunk < chunks.length ? chunks[chunk] : null;
+    }
+
+    private void share(int chunk, Container container, ChunkedBitmap a, ChunkedBitmap b) {
+        chunks[chunk] = container;
+        owned[chunk] = true;
+        if (container == null) return;
+        if (container == a.getChunk(chunk)) owned[chunk] = a.owned[chunk] = false;
+        if (container == b.getChunk(chunk)) owned[chunk] = b.owned[chunk] = false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof ChunkedBitmap)) return false;
+        ChunkedBitmap other = (ChunkedBitmap) obj;
+        if (chunks.length != other.chunks.length) return false;
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            Container a = chunks[chunk];
+            Container b = other.chunks[chunk];
+            if (a == b) continue;
+            if (a == null || b == null || a.cardinality() != b.cardinality()) return false;
+            for (int word = 0; word < Container.WORDS; word++)
+                if (a.getWord(word) != b.getWord(word)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (Container container : chunks) hash = 31 * hash + (container == null ? 0 : container.cardinality());
+        return hash;
+    }
+}
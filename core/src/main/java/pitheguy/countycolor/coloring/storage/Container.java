@@ -0,0 +1,73 @@
+package pitheguy.countycolor.coloring.storage;
+
+import pitheguy.countycolor.coloring.BitKernels;
+
+// A 64K-bit chunk of a ChunkedBitmap. Mutators return the container that should replace this one, which is null
+// once the chunk becomes empty.
+abstract class Container {
+    static final int SIZE = 1 << 16;
+    static final int WORDS = SIZE / 64;
+
+    abstract boolean get(int index);
+
+    abstract long getWord(int word);
+
+    abstract Container add(int start, int end);
+
+    abstract Container remove(int start, int end);
+
+    abstract int cardinality();
+
+    abstract int nextSetBit(int index);
+
+    abstract int nextClearBit(int index);
+
+    abstract Container copy();
+
+    abstract long[] toWords();
+
+    static Container ofRange(int start, int end) {
+        if (start == 0 && end == SIZE) return FullContainer.INSTANCE;
+        return new RunContainer(new int[]{start, end});
+    }
+
+    static Container and(Container a, Container b) {
+        if (a == null || b == null) return null;
+        if (a == FullContainer.INSTANCE) return b;
+        if (b == FullContainer.INSTANCE) return a;
+        long[] words = a.toWords();
+        long[] other = b.toWords();
+        BitKernels.INSTANCE.and(words, other, WORDS);
+        return fromWords(words);
+    }
+
+    static Container andNot(Container a, Container b) {
+        if (a == null || b == FullContainer.INSTANCE) return null;
+        if (b == null) return a;
+        long[] words = a.toWords();
+        long[] other = b.toWords();
+        BitKernels.INSTANCE.andNot(words, other, WORDS);
+        return fromWords(words);
+    }
+
+    // Picks whichever representation is smallest for the given bits
+    static Container fromWords(long[] words) {
+        int cardinality = BitKernels.INSTANCE.cardinality(words, WORDS);
+        if (cardinality == 0) return null;
+        if (cardinality == SIZE) return FullContainer.INSTANCE;
+        int runs = BitKernels.INSTANCE.countRuns(words, WORDS);
+        if (runs * 2 * Integer.BYTES < Math.min(cardinality * Character.BYTES, WORDS * Long.BYTES)) {
+            int[] intervals = new int[runs * 2];
+            int index = 0;
+            for (int start = BitmapContainer.nextBit(words, 0, true); start < SIZE; ) {
+                int end = BitmapContainer.nextBit(words, start, false);
+                intervals[index++] = start;
+                intervals[index++] = end;
+                start = BitmapContainer.nextBit(words, end, true);
+            }
+            return new RunContainer(intervals);
+        }
+        if (cardinality <= ArrayContainer.MAX_SIZE) return ArrayContainer.fromWords(words, cardinality);
+        return new BitmapContainer(words, cardinality);
+    }
+}
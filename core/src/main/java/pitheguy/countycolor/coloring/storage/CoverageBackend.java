@@ -0,0 +1,39 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.util.function.Supplier;
+
+public enum CoverageBackend {
+    DENSE("Bitmap", DenseTileStorage::new),
+    OFF_HEAP("Off-Heap Bitmap", DirectTileStorage::new),
+    INTERVALS("Row Intervals", IntervalTileStorage::new),
+    CHUNKS("Compressed Chunks", ChunkTileStorage::new),
+    QUADTREE("Quadtree (Fine Edges)", QuadtreeTileStorage::new, 2);
+
+    private final String displayName;
+    private final Supplier<TileStorage> factory;
+    private final int resolutionScale;
+
+    CoverageBackend(String displayName, Supplier<TileStorage> factory) {
+        this(displayName, factory, 1);
+    }
+
+    CoverageBackend(String displayName, Supplier<TileStorage> factory, int resolutionScale) {
+        this.displayName = displayName;
+        this.factory = factory;
+        this.resolutionScale = resolutionScale;
+    }
+
+    public TileStorage createStorage() {
+        return factory.get();
+    }
+
+    // Memory only grows with painted edges, so new counties get a finer grid under this backend
+    public int getResolutionScale() {
+        return resolutionScale;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
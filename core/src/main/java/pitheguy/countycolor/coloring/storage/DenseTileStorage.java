@@ -0,0 +1,98 @@
+package pitheguy.countycolor.coloring.storage;
+
+import pitheguy.countycolor.coloring.BitKernels;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+
+public class DenseTileStorage implements TileStorage {
+    private long[] words;
+    private boolean shared;
+
+    public DenseTileStorage() {
+        this(new long[WORDS_PER_ROW * SIZE], false);
+    }
+
+    private DenseTileStorage(long[] words, boolean shared) {
+        this.words = words;
+        this.shared = shared;
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        return (words[y * WORDS_PER_ROW + (x >> 6)] & (1L << x)) != 0;
+    }
+
+    @Override
+    public long getWord(int y, int word) {
+        return words[y * WORDS_PER_ROW + word];
+    }
+
+    @Override
+    public void setRun(int y, int startX, int endX) {
+        ensureWritable();
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++)
+            words[rowOffset + word] |= getRangeMask(word, startX, endX);
+    }
+
+    @Override
+    public void clearRun(int y, int startX, int endX) {
+        ensureWritable();
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++)
+            words[rowOffset + word] &= ~getRangeMask(word, startX, endX);
+    }
+
+    @Override
+    public int nextSetBit(int y, int x) {
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = words[rowOffset + word];
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int nextClearBit(int y, int x) {
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = ~words[rowOffset + word];
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int retainAll(long[] mask) {
+        ensureWritable();
+        if (mask != null) return BitKernels.INSTANCE.retainAll(words, mask, words.length);
+        int removed = BitKernels.INSTANCE.cardinality(words, words.length);
+        Arrays.fill(words, 0);
+        return removed;
+    }
+
+    @Override
+    public void copyRows(int startY, int endY, LongBuffer destination) {
+        destination.put(words, startY * WORDS_PER_ROW, (endY - startY) * WORDS_PER_ROW);
+    }
+
+    @Override
+    public TileStorage copy() {
+        shared = true;
+        return new DenseTileStorage(words, true);
+    }
+
+    private void ensureWritable() {
+        if (!shared) return;
+        words = words.clone();
+        shared = false;
+    }
+}
@@ -0,0 +1,101 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+
+// Same layout as DenseTileStorage, but the words live in a little-endian direct buffer outside the Java heap. That
+// is already the coverage texture format, so uploads read the buffer in place.
+public class DirectTileStorage implements TileStorage {
+    private static final int ROW_BYTES = WORDS_PER_ROW * Long.BYTES;
+    private ByteBuffer bytes;
+    private LongBuffer words;
+    private boolean shared;
+
+    public DirectTileStorage() {
+        this(ByteBuffer.allocateDirect(ROW_BYTES * SIZE).order(ByteOrder.LITTLE_ENDIAN), false);
+    }
+
+    private DirectTileStorage(ByteBuffer bytes, boolean shared) {
+        this.bytes = bytes;
+        this.words = bytes.asLongBuffer();
+        this.shared = shared;
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        return (words.get(y * WORDS_PER_ROW + (x >> 6)) & (1L << x)) != 0;
+    }
+
+    @Override
+    public long getWord(int y, int word) {
+        return words.get(y * WORDS_PER_ROW + word);
+    }
+
+    @Override
+    public void setRun(int y, int startX, int endX) {
+        ensureWritable();
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++)
+            words.put(rowOffset + word, words.get(rowOffset + word) | getRangeMask(word, startX, endX));
+    }
+
+    @Override
+    public void clearRun(int y, int startX, int endX) {
+        ensureWritable();
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = startX >> 6; word <= (endX - 1) >> 6; word++)
+            words.put(rowOffset + word, words.get(rowOffset + word) & ~getRangeMask(word, startX, endX));
+    }
+
+    @Override
+    public int nextSetBit(int y, int x) {
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = words.get(rowOffset + word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int nextClearBit(int y, int x) {
+        int rowOffset = y * WORDS_PER_ROW;
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = ~words.get(rowOffset + word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public void copyRows(int startY, int endY, LongBuffer destination) {
+        destination.put(words.slice(startY * WORDS_PER_ROW, (endY - startY) * WORDS_PER_ROW));
+    }
+
+    @Override
+    public ByteBuffer getRowBytes(int startY, int endY) {
+        return bytes.slice(startY * ROW_BYTES, (endY - startY) * ROW_BYTES);
+    }
+
+    @Override
+    public TileStorage copy() {
+        shared = true;
+        return new DirectTileStorage(bytes, true);
+    }
+
+    private void ensureWritable() {
+        if (!shared) return;
+        ByteBuffer copy = ByteBuffer.allocateDirect(bytes.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        copy.put(bytes.duplicate().clear()).clear();
+        bytes = copy;
+        words = copy.asLongBuffer();
+        shared = false;
+    }
+}
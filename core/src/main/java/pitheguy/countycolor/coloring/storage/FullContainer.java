@@ -0,0 +1,57 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.util.Arrays;
+
+final class FullContainer extends Container {
+    static final FullContainer INSTANCE = new FullContainer();
+
+    private FullContainer() {
+    }
+
+    @Override
+    boolean get(int index) {
+        return true;
+    }
+
+    @Override
+    long getWord(int word) {
+        return -1L;
+    }
+
+    @Override
+    Container add(int start, int end) {
+        return this;
+    }
+
+    @Override
+    Container remove(int start, int end) {
+        return new RunContainer(new int[]{0, SIZE}).remove(start, end);
+    }
+
+    @Override
+    int cardinality() {
+        return SIZE;
+    }
+
+    @Override
+    int nextSetBit(int index) {
+        return index;
+    }
+
+    @Override
+    int nextClearBit(int index) {
+        return SIZE;
+    }
+
+    @Override
+    long[] toWords() {
+        long[] words = new long[WORDS];
+        Arrays.fill(words, -1L);
+        return words;
+    }
+
+    @Override
+    Container copy() {
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.util.Arrays;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+
+public class IntervalTileStorage implements TileStorage {
+    // Row arrays are never mutated once published, so copies only need to clone the outer array.
+    private final int[][] rows;
+
+    public IntervalTileStorage() {
+        this(new int[SIZE][]);
+        Arrays.fill(rows, Intervals.EMPTY);
+    }
+
+    private IntervalTileStorage(int[][] rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        return Intervals.contains(rows[y], x);
+    }
+
+    @Override
+    public long getWord(int y, int word) {
+        return Intervals.getWord(rows[y], word);
+    }
+
+    @Override
+    public void setRun(int y, int startX, int endX) {
+        rows[y] = Intervals.add(rows[y], startX, endX);
+    }
+
+    @Override
+    public void clearRun(int y, int startX, int endX) {
+        rows[y] = Intervals.remove(rows[y], startX, endX);
+    }
+
+    @Override
+    public int nextSetBit(int y, int x) {
+        return Intervals.nextSetBit(rows[y], x, SIZE);
+    }
+
+    @Override
+    public int nextClearBit(int y, int x) {
+        return Intervals.nextClearBit(rows[y], x);
+    }
+
+    @Override
+    public TileStorage copy() {
+        return new IntervalTileStorage(rows.clone());
+    }
+}
@@ -0,0 +1,95 @@
+package pitheguy.countycolor.coloring.storage;
+
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+
+// Helpers for sorted, disjoint, non-adjacent [start, end) pairs. Arrays are never mutated in place.
+final class Intervals {
+    static final int[] EMPTY = new int[0];
+
+    private Intervals() {
+    }
+
+    static boolean contains(int[] intervals, int x) {
+        int i = firstEndingAfter(intervals, x);
+        return i < intervals.length && intervals[i] <= x;
+    }
+
+    static long getWord(int[] intervals, int word) {
+        int start = word * 64;
+        int end = start + 64;
+        long bits = 0;
+        for (int i = firstEndingAfter(intervals, start); i < intervals.length && intervals[i] < end; i += 2)
+            bits |= getRangeMask(word, Math.max(intervals[i], start), Math.min(intervals[i + 1], end));
+        return bits;
+    }
+
+    static int[] add(int[] intervals, int start, int end) {
+        int first = firstEndingAtOrAfter(intervals, start);
+        int last = first;
+        while (last < intervals.length && intervals[last] <= end) {
+            start = Math.min(start, intervals[last]);
+            end = Math.max(end, intervals[last + 1]);
+            last += 2;
+        }
+        int[] result = new int[intervals.length - (last - first) + 2];
+        System.arraycopy(intervals, 0, result, 0, first);
+        result[first] = start;
+        result[first + 1] = end;
+        System.arraycopy(intervals, last, result, first + 2, intervals.length - last);
+        return result;
+    }
+
+    static int[] remove(int[] intervals, int start, int end) {
+        int first = firstEndingAfter(intervals, start);
+        int last = first;
+        while (last < intervals.length && intervals[last] < end) last += 2;
+        if (first == last) return intervals;
+        boolean keepLeft = intervals[first] < start;
+        boolean keepRight = intervals[last - 1] > end;
+        int[] result = new int[intervals.length - (last - first) + (keepLeft ? 2 : 0) + (keepRight ? 2 : 0)];
+        System.arraycopy(intervals, 0, result, 0, first);
+        int index = first;
+        if (keepLeft) {
+            result[index++] = intervals[first];
+            result[index++] = start;
+        }
+        if (keepRight) {
+            result[index++] = end;
+            result[index++] = intervals[last - 1];
+        }
+        System.arraycopy(intervals, last, result, index, intervals.length - last);
+        return result;
+    }
+
+    static int nextSetBit(int[] intervals, int x, int none) {
+        int i = firstEndingAfter(intervals, x);
+        return i < intervals.length ? Math.max(intervals[i], x) : none;
+    }
+
+    static int nextClearBit(int[] intervals, int x) {
+        int i = firstEndingAfter(intervals, x);
+        return i < intervals.length && intervals[i] <= x ? intervals[i + 1] : x;
+    }
+
+    static int cardinality(int[] intervals) {
+        int cardinality = 0;
+        for (int i = 0; i < intervals.length; i += 2) cardinality += intervals[i + 1] - intervals[i];
+        return cardinality;
+    }
+
+    private static int firstEndingAfter(int[] intervals, int x) {
+        return firstEndingAtOrAfter(intervals, x + 1);
+    }
+
+    // Index of the first pair whose end is >= x
+    private static int firstEndingAtOrAfter(int[] intervals, int x) {
+        int low = 0;
+        int high = intervals.length / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (intervals[mid * 2 + 1] < x) low = mid + 1;
+            else high = mid;
+        }
+        return low * 2;
+    }
+}
@@ -0,0 +1,165 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.nio.LongBuffer;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+
+// Uniform quadrants collapse to the shared EMPTY and FULL nodes, so only quadrants crossing a paint boundary are
+// subdivided, down to 8x8 leaves stored as a single long. Nodes are edited in place only while they belong to this
+// storage's current owner token; copying hands out new tokens, so both sides path-copy anything they still share.
+public class QuadtreeTileStorage implements TileStorage {
+    private static final int LEAF_SIZE = 8;
+    private Node root;
+    private Object owner = new Object();
+
+    public QuadtreeTileStorage() {
+        this(Node.EMPTY);
+    }
+
+    private QuadtreeTileStorage(Node root) {
+        this.root = root;
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        Node node = root;
+        int size = SIZE;
+        while (node.children != null) {
+            size /= 2;
+            int quadrant = 0;
+            if (x >= size) {
+                x -= size;
+                quadrant |= 1;
+            }
+            if (y >= size) {
+                y -= size;
+                quadrant |= 2;
+            }
+            node = node.children[quadrant];
+        }
+        return (node.bits >>> (y * LEAF_SIZE + x) & 1) != 0;
+    }
+
+    @Override
+    public long getWord(int y, int word) {
+        return getRow(root, SIZE, y, word * 64, 64);
+    }
+
+    // Bits [x, x + width) of row y within a node; width is a power of two no larger than the node and x is aligned to it
+    private static long getRow(Node node, int size, int y, int x, int width) {
+        if (node == Node.EMPTY) return 0;
+        if (node == Node.FULL) return width == 64 ? -1L : (1L << width) - 1;
+        if (node.children == null) return (node.bits >>> (y * LEAF_SIZE + x)) & ((1L << width) - 1);
+        int half = size / 2;
+        int top = y >= half ? 2 : 0;
+        int localY = y - (top == 0 ? 0 : half);
+        if (width <= half) {
+            int right = x >= half ? 1 : 0;
+            return getRow(node.children[top | right], half, localY, x - right * half, width);
+        }
+        long left = getRow(node.children[top], half, localY, 0, half);
+        return left | getRow(node.children[top | 1], half, localY, 0, half) << half;
+    }
+
+    @Override
+    public void setRun(int y, int startX, int endX) {
+        if (startX < endX) root = update(root, SIZE, y, startX, endX, true, owner);
+    }
+
+    @Override
+    public void clearRun(int y, int startX, int endX) {
+        if (startX < endX) root = update(root, SIZE, y, startX, endX, false, owner);
+    }
+
+    private static Node update(Node node, int size, int y, int startX, int endX, boolean value, Object owner) {
+        if (node == (value ? Node.FULL : Node.EMPTY)) return node;
+        boolean owned = node.owner == owner;
+        if (size == LEAF_SIZE) {
+            long run = ((1L << (endX - startX)) - 1) << (y * LEAF_SIZE + startX);
+            long bits = value ? node.bits | run : node.bits & ~run;
+            if (bits == 0) return Node.EMPTY;
+            if (bits == -1L) return Node.FULL;
+            if (!owned) return new Node(null, bits, owner);
+            node.bits = bits;
+            return node;
+        }
+        Node[] children = owned ? node.children : node.children != null ? node.children.clone() : new Node[]{node, node, node, node};
+        int half = size / 2;
+        int top = y >= half ? 2 : 0;
+        int localY = y - (top == 0 ? 0 : half);
+        if (startX < half) children[top] = update(children[top], half, localY, startX, Math.min(endX, half), value, owner);
+        if (endX > half) children[top | 1] = update(children[top | 1], half, localY, Math.max(startX - half, 0), endX - half, value, owner);
+        Node first = children[0];
+        boolean uniform = first == Node.EMPTY || first == Node.FULL;
+        if (uniform && children[1] == first && children[2] == first && children[3] == first) return first;
+        return owned ? node : new Node(children, 0, owner);
+    }
+
+    @Override
+    public int nextSetBit(int y, int x) {
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = getWord(y, word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public int nextClearBit(int y, int x) {
+        for (int word = x >> 6; word < WORDS_PER_ROW; word++) {
+            long bits = ~getWord(y, word);
+            if (word == x >> 6) bits &= -1L << x;
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return SIZE;
+    }
+
+    @Override
+    public void copyRows(int startY, int endY, LongBuffer destination) {
+        int base = destination.position();
+        for (int i = 0; i < (endY - startY) * WORDS_PER_ROW; i++) destination.put(base + i, 0);
+        writeRows(root, SIZE, 0, 0, startY, endY, destination, base);
+        destination.position(base + (endY - startY) * WORDS_PER_ROW);
+    }
+
+    private static void writeRows(Node node, int size, int x, int y, int startY, int endY, LongBuffer destination, int base) {
+        if (node == Node.EMPTY || y >= endY || y + size <= startY) return;
+        if (node.children != null) {
+            int half = size / 2;
+            for (int quadrant = 0; quadrant < 4; quadrant++)
+                writeRows(node.children[quadrant], half, x + (quadrant & 1) * half, y + (quadrant >> 1) * half, startY, endY, destination, base);
+            return;
+        }
+        for (int row = Math.max(y, startY); row < Math.min(y + size, endY); row++) {
+            int index = base + (row - startY) * WORDS_PER_ROW + (x >> 6);
+            if (size >= 64) {
+                for (int word = 0; word < size / 64; word++) destination.put(index + word, -1L);
+            } else {
+                long bits = node == Node.FULL ? (1L << size) - 1 : (node.bits >>> ((row - y) * LEAF_SIZE)) & 0xFF;
+                destination.put(index, destination.get(index) | bits << (x & 63));
+            }
+        }
+    }
+
+    @Override
+    public TileStorage copy() {
+        owner = new Object();
+        return new QuadtreeTileStorage(root);
+    }
+
+    private static class Node {
+        static final Node EMPTY = new Node(null, 0, null);
+        static final Node FULL = new Node(null, -1L, null);
+        final Node[] children;
+        final Object owner;
+        long bits;
+
+        Node(Node[] children, long bits, Object owner) {
+            this.children = children;
+            this.bits = bits;
+            this.owner = owner;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pitheguy.countycolor.coloring.storage;
+
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+
+class RunContainer extends Container {
+    // Every write copies the run array, so heavily edited chunks switch to a bitmap well before runs stop saving space
+    static final int MAX_RUNS = 64;
+    private int[] intervals;
+    private int cardinality;
+
+    RunContainer(int[] intervals) {
+        this.intervals = intervals;
+        this.cardinality = Intervals.cardinality(intervals);
+    }
+
+    @Override
+    boolean get(int index) {
+        return Intervals.contains(intervals, index);
+    }
+
+    @Override
+    long getWord(int word) {
+        return Intervals.getWord(intervals, word);
+    }
+
+    @Override
+    Container add(int start, int end) {
+        intervals = Intervals.add(intervals, start, end);
+        cardinality = Intervals.cardinality(intervals);
+        if (cardinality == SIZE) return FullContainer.INSTANCE;
+        if (intervals.length / 2 > MAX_RUNS) return new BitmapContainer(toWords(), cardinality);
+        return this;
+    }
+
+    @Override
+    Container remove(int start, int end) {
+        intervals = Intervals.remove(intervals, start, end);
+        cardinality = Intervals.cardinality(intervals);
+        if (cardinality == 0) return null;
+        if (intervals.length / 2 > MAX_RUNS) return new BitmapContainer(toWords(), cardinality);
+        return this;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    int nextSetBit(int index) {
+        return Intervals.nextSetBit(intervals, index, -1);
+    }
+
+    @Override
+    int nextClearBit(int index) {
+        return Intervals.nextClearBit(intervals, index);
+    }
+
+    @Override
+    long[] toWords() {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < intervals.length; i += 2) {
+            int start = intervals[i];
+            int end = intervals[i + 1];
+            for (int word = start >> 6; word <= (end - 1) >> 6; word++) words[word] |= getRangeMask(word, start, end);
+        }
+        return words;
+    }
+
+    @Override
+    Container copy() {
+        return new RunContainer(intervals);
+    }
+}
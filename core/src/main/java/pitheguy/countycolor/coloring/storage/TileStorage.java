@@ -0,0 +1,52 @@
+package pitheguy.countycolor.coloring.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+
+public interface TileStorage {
+    boolean get(int x, int y);
+
+    long getWord(int y, int word);
+
+    void setRun(int y, int startX, int endX);
+
+    void clearRun(int y, int startX, int endX);
+
+    int nextSetBit(int y, int x);
+
+    int nextClearBit(int y, int x);
+
+    TileStorage copy();
+
+    default int retainAll(long[] mask) {
+        int removed = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int word = 0; word < WORDS_PER_ROW; word++) {
+                long bits = getWord(y, word);
+                if (mask != null) bits &= ~mask[y * WORDS_PER_ROW + word];
+                removed += Long.bitCount(bits);
+                while (bits != 0) {
+                    int start = Long.numberOfTrailingZeros(bits);
+                    int length = Long.numberOfTrailingZeros(~(bits >>> start));
+                    bits = length == 64 ? 0 : bits & ~(((1L << length) - 1) << start);
+                    clearRun(y, word * 64 + start, word * 64 + start + length);
+                }
+            }
+        }
+        return removed;
+    }
+
+    default void copyRows(int startY, int endY, LongBuffer destination) {
+        for (int y = startY; y < endY; y++)
+            for (int word = 0; word < WORDS_PER_ROW; word++)
+                destination.put(getWord(y, word));
+    }
+
+    // Rows in the coverage texture format, for storages that can hand out their backing memory without copying
+    default ByteBuffer getRowBytes(int startY, int endY) {
+        return null;
+    }
+}
@@ -1,5 +1,6 @@
 package pitheguy.countycolor.gui.screens;
 
+import clipper2.core.Paths64;
 import com.badlogic.gdx.*;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.*;
@@ -14,12 +15,18 @@ import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.*;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import pitheguy.countycolor.coloring.ColoringGrid;
+import pitheguy.countycolor.coloring.CoverageMask;
+import pitheguy.countycolor.coloring.GridLayout;
 import pitheguy.countycolor.coloring.MapColor;
+import pitheguy.countycolor.coloring.UncoloredRegion;
+import pitheguy.countycolor.coloring.VectorCoverage;
 import pitheguy.countycolor.coloring.history.ColoringHistory;
 import pitheguy.countycolor.coloring.history.HistorySnapshot;
 import pitheguy.countycolor.metadata.CountyData;
+import pitheguy.countycolor.options.Options;
 import pitheguy.countycolor.render.renderer.ColoringRenderer;
 import pitheguy.countycolor.render.renderer.CountyRenderer;
+import pitheguy.countycolor.render.renderer.VectorCoverageRenderer;
 import pitheguy.countycolor.render.util.*;
 import pitheguy.countycolor.util.*;
 
@@ -36,6 +43,7 @@ public class CountyColorScreen implements Screen, InputProcessor {
     private final ShapeRenderer progressBarRenderer = new ShapeRenderer();
     private final CountyRenderer countyRenderer;
     private final ColoringRenderer coloringRenderer = new ColoringRenderer();
+    private final VectorCoverageRenderer vectorCoverageRenderer = new VectorCoverageRenderer();
     private final Stage stage;
     private Skin skin;
     private Button backButton;
@@ -47,18 +55,29 @@ public class CountyColorScreen implements Screen, InputProcessor {
     private final Vector2 lastColor = new Vector2();
     private boolean dragging = false;
     private boolean coloring = false;
+    private boolean fillMode = false;
     private float maxZoom;
     private float brushSize = 5;
     private ColoringGrid coloringGrid;
+    private VectorCoverage vectorCoverage;
     private Future<?> loadingFuture;
     private ColoringHistory history;
     private float timeSinceSave = 0f;
     private int lastSnapshotIndex = 0;
+    private int uncoloredRegionIndex = 0;
     private boolean inTransition = false;
+    private MapColor completedColor;
     private boolean dirty = false;
     private Thread saveThread;
     private boolean markedAsComplete = false;
     private SnapshotThread snapshotThread;
+    private final ExecutorService sliverFillExecutor = Executors.newSingleThreadExecutor();
+    private Future<IntArray> sliverFillFuture;
+    private ColoringGrid sliverFillSnapshot;
+    private Future<Paths64> vectorSliverFillFuture;
+    private int sliverFillVersion;
+    private boolean sliverFillPending = true;
+    private int maskCardinality;
 
     public CountyColorScreen(Game game, CountyData.County county, boolean load) {
         this.game = game;
@@ -76,7 +95,8 @@ public class CountyColorScreen implements Screen, InputProcessor {
             loadingFuture = executor.submit(this::load);
             executor.shutdown();
         } else {
-            coloringGrid = new ColoringGrid();
+            coloringGrid = new ColoringGrid(GridLayout.forCounty(county.getPolygons(), Options.COVERAGE_BACKEND.get()), Options.COVERAGE_BACKEND.get());
+            if (Options.VECTOR_COVERAGE.get()) vectorCoverage = new VectorCoverage();
             history = new ColoringHistory();
         }
         countyRenderer = new CountyRenderer(county);
@@ -122,12 +142,14 @@ public class CountyColorScreen implements Screen, InputProcessor {
         Gdx.gl.glClearColor(1, 1, 1, 1);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
         if (inTransition) {
-            countyRenderer.renderCountyFilled(camera, 1, coloringGrid.getColor());
+            countyRenderer.renderCountyFilled(camera, 1, completedColor);
             return;
         }
         countyRenderer.renderHighlight(camera, delta);
-        coloringRenderer.render(coloringGrid, camera);
+        if (vectorCoverage != null) vectorCoverageRenderer.render(vectorCoverage, camera, coloringGrid.getColor().getColor());
+        else coloringRenderer.render(coloringGrid, camera);
         countyRenderer.renderCounty(camera);
+        countyRenderer.renderHighlightedRegions(camera);
         renderCursor();
         renderProgressBar();
         stage.act(delta);
@@ -138,23 +160,22 @@ public class CountyColorScreen implements Screen, InputProcessor {
             timeSinceSave = 0;
         }
         history.rasterizeNextSnapshot();
+        updateSliverFill();
         if (getCompletion() == 1) onCountyCompleted();
     }
 
     private void renderCursor() {
+        if (fillMode) {
+            cursorRenderer.begin(ShapeRenderer.ShapeType.Line);
+            cursorRenderer.setColor(coloringGrid.getBrushColor().getColor());
+            cursorRenderer.circle(Gdx.input.getX(), Gdx.graphics.getHeight() - Gdx.input.getY(), 8);
+            cursorRenderer.end();
+            return;
+        }
         cursorRenderer.begin(ShapeRenderer.ShapeType.Filled);
-        cursorRenderer.setColor(canColor() ? coloringGrid.getColor().getColor() : Color.RED);
+        cursorRenderer.setColor(canColor() ? coloringGrid.getBrushColor().getColor() : Color.RED);
         cursorRenderer.circle(Gdx.input.getX(), Gdx.graphics.getHeight() - Gdx.input.getY(), brushSize / camera.zoom);
         cursorRenderer.end();
-        if (DebugFlags.RENDER_CURSOR_TEST_POINTS) {
-            cursorRenderer.begin(ShapeRenderer.ShapeType.Filled);
-            cursorRenderer.setColor(Color.BLUE);
-            for (Vector2 point : getTestPoints(RenderUtil.getMouseWorldCoords(camera))) {
-                Vector3 projected = camera.project(new Vector3(point.x, point.y, 0));
-                cursorRenderer.circle(projected.x, projected.y, 2);
-            }
-            cursorRenderer.end();
-        }
     }
 
     private void renderProgressBar() {
@@ -177,9 +198,58 @@ public class CountyColorScreen implements Screen, InputProcessor {
     private void onCountyCompleted() {
         dirty = true; // Mark dirty to force save
         saveAsync();
+        completedColor = coloringGrid.getDominantColor();
         addCountyToCompletionFile();
         inTransition = true;
-        transitionHelper.slowTransition(new Vector2(0, 0), 2f, new CountyCompleteScreen(game, county, coloringGrid.getColor(), history), false);
+        transitionHelper.slowTransition(new Vector2(0, 0), 2f, new CountyCompleteScreen(game, county, completedColor, history), false);
+    }
+
+    private void updateSliverFill() {
+        if (sliverFillFuture != null || vectorSliverFillFuture != null) {
+            if (sliverFillFuture != null ? !sliverFillFuture.isDone() : !vectorSliverFillFuture.isDone()) return;
+            if (getCoverageVersion() == sliverFillVersion) applySliverFill();
+            else sliverFillPending = true;
+            cancelSliverFill();
+        }
+        int threshold = Options.SLIVER_FILL_THRESHOLD.get();
+        if (!sliverFillPending || threshold <= 0) return;
+        sliverFillPending = false;
+        sliverFillVersion = getCoverageVersion();
+        if (vectorCoverage != null) {
+            VectorCoverage coverage = vectorCoverage;
+            GridLayout layout = coloringGrid.getLayout();
+            vectorSliverFillFuture = sliverFillExecutor.submit(() -> coverage.findSlivers(threshold, layout));
+            return;
+        }
+        ColoringGrid snapshot = coloringGrid.copy();
+        sliverFillSnapshot = snapshot;
+        sliverFillFuture = sliverFillExecutor.submit(() -> snapshot.findSliverRuns(threshold));
+    }
+
+    // The coverage version hasn't moved since the search started, so the newest undo entry is the stroke that left
+    // these slivers and undoing it takes them back too
+    private void applySliverFill() {
+        if (vectorCoverage != null) {
+            if (vectorCoverage.applySlivers(Util.getFutureValue(vectorSliverFillFuture))) dirty = true;
+            return;
+        }
+        if (coloringGrid.applySliverRuns(Util.getFutureValue(sliverFillFuture)) > 0) dirty = true;
+        coloringGrid.adoptUncoloredRegions(sliverFillSnapshot);
+    }
+
+    private void cancelSliverFill() {
+        if (vectorSliverFillFuture != null) vectorSliverFillFuture.cancel(false);
+        vectorSliverFillFuture = null;
+        if (sliverFillFuture == null) return;
+        // A running search keeps reading the snapshot after being cancelled, so it's only released once the search is over
+        if (sliverFillFuture.isDone()) sliverFillSnapshot.dispose();
+        sliverFillFuture.cancel(false);
+        sliverFillSnapshot = null;
+        sliverFillFuture = null;
+    }
+
+    private int getCoverageVersion() {
+        return vectorCoverage != null ? vectorCoverage.getVersion() : coloringGrid.getVersion();
     }
 
     @Override
@@ -193,11 +263,9 @@ public class CountyColorScreen implements Screen, InputProcessor {
             lastDrag.set(screenX, screenY);
             return true;
         } else if (coloring) {
+            Vector3 lastColorWorld = camera.unproject(new Vector3(lastColor.x, lastColor.y, 0));
             lastColor.set(screenX, screenY);
-            if (canColor()) {
-                Vector3 lastColorWorld = camera.unproject(new Vector3(lastColor.x, lastColor.y, 0));
-                applyBrush(lastColorWorld);
-            }
+            if (canColor()) applyBrush(lastColorWorld);
         }
         return false;
     }
@@ -207,8 +275,18 @@ public class CountyColorScreen implements Screen, InputProcessor {
         if (button == Input.Buttons.RIGHT) {
             lastDrag.set(screenX, screenY);
             dragging = true;
+        } else if (button == Input.Buttons.LEFT && fillMode) {
+            beginStroke();
+            Vector2 pos = RenderUtil.getMouseWorldCoords(camera);
+            boolean filled = vectorCoverage != null ? vectorCoverage.fill(pos) : coloringGrid.fill(pos) > 0;
+            if (filled) {
+                dirty = true;
+                sliverFillPending = true;
+            }
+            endStroke();
         } else if (button == Input.Buttons.LEFT) {
             lastColor.set(screenX, screenY);
+            beginStroke();
             coloring = true;
         }
         return true;
@@ -216,11 +294,26 @@ public class CountyColorScreen implements Screen, InputProcessor {
 
     @Override
     public boolean touchUp(int screenX, int screenY, int pointer, int button) {
+        if (coloring) {
+            endStroke();
+            sliverFillPending = true;
+        }
         dragging = false;
         coloring = false;
         return true;
     }
 
+    private void beginStroke() {
+        cancelSliverFill();
+        if (vectorCoverage != null) vectorCoverage.beginStroke();
+        else coloringGrid.beginStroke();
+    }
+
+    private void endStroke() {
+        if (vectorCoverage != null) vectorCoverage.endStroke();
+        else coloringGrid.endStroke();
+    }
+
     @Override
     public boolean touchCancelled(int screenX, int screenY, int pointer, int button) {
         return false;
@@ -231,7 +324,7 @@ public class CountyColorScreen implements Screen, InputProcessor {
         Vector2 mouseWorldBefore = RenderUtil.getMouseWorldCoords(camera);
         if (Gdx.input.isKeyPressed(Input.Keys.CONTROL_LEFT)) {
             float zoomFactor = (amountY < 0) ? 0.9f : 1.1f;
-            camera.zoom = MathUtils.clamp(camera.zoom * zoomFactor, 0.1f, maxZoom);
+            camera.zoom = MathUtils.clamp(camera.zoom * zoomFactor, getMinZoom(), maxZoom);
             camera.update();
             Vector2 mouseWorldAfter = RenderUtil.getMouseWorldCoords(camera);
             Vector2 delta = mouseWorldBefore.sub(mouseWorldAfter);
@@ -248,13 +341,25 @@ public class CountyColorScreen implements Screen, InputProcessor {
         Vector2 currentPos = new Vector2(lastColor.x, lastColor.y);
         int steps = brushSize > 30 ? 1 : 5;
         Vector2 delta = mouse.cpy().sub(currentPos).scl(1f / steps);
+        Vector2 strokeStart = canColor(currentPos) ? currentPos.cpy() : null;
+        Vector2 strokeEnd = currentPos.cpy();
         for (int i = 0; i < steps; i++) {
             currentPos.add(delta);
             if (canColor(currentPos)) {
-                coloringGrid.applyBrush(currentPos, brushSize);
-                dirty = true;
+                if (strokeStart == null) strokeStart = currentPos.cpy();
+                strokeEnd.set(currentPos);
+            } else if (strokeStart != null) {
+                applyStroke(strokeStart, strokeEnd);
+                strokeStart = null;
             }
         }
+        if (strokeStart != null) applyStroke(strokeStart, strokeEnd);
+    }
+
+    private void applyStroke(Vector2 from, Vector2 to) {
+        if (vectorCoverage != null) vectorCoverage.addCapsule(from, to, brushSize);
+        else coloringGrid.applyStroke(from, to, brushSize);
+        dirty = true;
     }
 
     private boolean canColor() {
@@ -262,33 +367,35 @@ public class CountyColorScreen implements Screen, InputProcessor {
     }
 
     private boolean canColor(Vector2 pos) {
-        for (Vector2 point : getTestPoints(pos))
-            if (!countyRenderer.isCoordinateWithinCounty(point))
-                return false;
-        return true;
+        return countyRenderer.getDistanceToBoundary(pos) >= brushSize;
     }
 
-    private List<Vector2> getTestPoints(Vector2 pos) {
-        List<Vector2> points = new ArrayList<>();
-        int numPoints = getNumTestPoints();
-        for (int i = 0; i < numPoints; i++) {
-            float angle = (float)(i * Math.PI * 2 / numPoints); // 0 to 2π
-            float dx = brushSize * (float)Math.cos(angle);
-            float dy = brushSize * (float)Math.sin(angle);
-            Vector2 offsetPoint = new Vector2(pos.x + dx, pos.y + dy);
-            points.add(offsetPoint);
-        }
-        return points;
+    private void showNextUncoloredRegion() {
+        List<UncoloredRegion> regions = getRaster().getUncoloredRegions();
+        GridLayout layout = coloringGrid.getLayout();
+        countyRenderer.highlightUncoloredAreas(regions, layout);
+        if (regions.isEmpty()) return;
+        UncoloredRegion region = regions.get(uncoloredRegionIndex++ % regions.size());
+        float width = (float) (region.getMaxX() - region.getMinX()) / layout.getResolution();
+        float height = (float) (region.getMaxY() - region.getMinY()) / layout.getResolution();
+        Vector2 center = new Vector2(
+            layout.toWorldX((region.getMinX() + region.getMaxX()) / 2f),
+            layout.toWorldY((region.getMinY() + region.getMaxY()) / 2f));
+        float zoom = MathUtils.clamp(Math.max(width / camera.viewportWidth, height / camera.viewportHeight) * 2, getMinZoom(), maxZoom);
+        transitionHelper.transition(center, zoom, () -> {});
     }
 
-    private int getNumTestPoints() {
-        if (brushSize < 10) return (int) (brushSize * 10);
-        if (brushSize < 20) return (int) (brushSize * 8);
-        return (int) (brushSize * 5);
+    // Past one grid cell per pixel the raster only gets blockier, so the limit follows the county's resolution
+    private float getMinZoom() {
+        return vectorCoverage != null ? 0.01f : 1f / coloringGrid.getLayout().getResolution();
     }
 
     public float getCompletion() {
-        return markedAsComplete ? 1 : (float) Math.min((double) coloringGrid.coloredPoints() / countyRenderer.getTotalGridSquares(), 1);
+        if (markedAsComplete) return 1;
+        if (vectorCoverage != null) return vectorCoverage.getCompletion();
+        // Zero until show() sets up the mask, or if the county is too small to cover a single cell
+        if (maskCardinality == 0) return 0;
+        return (float) Math.min((double) coloringGrid.coloredPoints() / maskCardinality, 1);
     }
 
     public void markAsComplete() {
@@ -300,6 +407,7 @@ public class CountyColorScreen implements Screen, InputProcessor {
         cursorRenderer.dispose();
         countyRenderer.dispose();
         coloringRenderer.dispose();
+        vectorCoverageRenderer.dispose();
         coloringGrid.dispose();
         stage.dispose();
         batch.dispose();
@@ -307,10 +415,15 @@ public class CountyColorScreen implements Screen, InputProcessor {
         progressBarRenderer.dispose();
         skin.dispose();
         snapshotThread.stopRunning();
+        sliverFillExecutor.shutdownNow();
     }
 
     private void saveAsync() {
-        saveThread = new Thread(this::save);
+        if (!dirty) return;
+        ColoringGrid snapshot = coloringGrid.copy();
+        VectorCoverage vectorSnapshot = vectorCoverage == null ? null : vectorCoverage.copy();
+        float completion = getCompletion();
+        saveThread = new Thread(() -> save(snapshot, vectorSnapshot, completion));
         saveThread.start();
     }
 
@@ -322,21 +435,23 @@ public class CountyColorScreen implements Screen, InputProcessor {
         }
     }
 
-    private void save() {
-        if (!dirty) return;
+    private void save(ColoringGrid grid, VectorCoverage vector, float completion) {
         FileHandle dataHandle = Gdx.files.local("data/" + county.getState() + ".json");
         JsonReader reader = new JsonReader();
         JsonValue root = dataHandle.exists() ? reader.parse(dataHandle) : new JsonValue(JsonValue.ValueType.object);
         if (root.has(county.getName())) root.remove(county.getName());
         JsonValue countyJson = new JsonValue(JsonValue.ValueType.object);
         root.addChild(county.getName(), countyJson);
-        countyJson.addChild("color", new JsonValue(coloringGrid.getColor().getSerializedName()));
-        if (getCompletion() < 1) {
-            countyJson.addChild("coloredPoints", new JsonValue(coloringGrid.asEncodedString()));
+        countyJson.addChild("color", new JsonValue(grid.getColor().getSerializedName()));
+        if (completion < 1) {
+            countyJson.addChild("gridLayout", grid.getLayout().toJson());
+            if (vector != null) countyJson.addChild("vectorCoverage", new JsonValue(vector.asEncodedString()));
+            else countyJson.addChild("coloredPoints", new JsonValue(grid.asEncodedString()));
             countyJson.addChild("history", new JsonValue(Base64.getEncoder().encodeToString(history.encode())));
         }
-        countyJson.addChild("completion", new JsonValue(getCompletion()));
+        countyJson.addChild("completion", new JsonValue(completion));
         dataHandle.writeString(root.toJson(JsonWriter.OutputType.json), false);
+        grid.dispose();
     }
 
     private void addCountyToCompletionFile() {
@@ -344,7 +459,7 @@ public class CountyColorScreen implements Screen, InputProcessor {
         JsonReader reader = new JsonReader();
         JsonValue root = handle.exists() ? reader.parse(handle) : new JsonValue(JsonValue.ValueType.object);
         JsonValue state = root.has(county.getState()) ? root.get(county.getState()) : new JsonValue(JsonValue.ValueType.object);
-        state.addChild(county.getName(), new JsonValue(coloringGrid.getColor().getSerializedName()));
+        state.addChild(county.getName(), new JsonValue(completedColor.getSerializedName()));
         if (!root.has(county.getState())) root.addChild(county.getState(), state);
         handle.writeString(root.toJson(JsonWriter.OutputType.json), false);
     }
@@ -356,12 +471,37 @@ public class CountyColorScreen implements Screen, InputProcessor {
         JsonValue root = reader.parse(dataHandle);
         JsonValue countyJson = root.get(county.getName());
         if (countyJson == null) throw new IllegalStateException("No saved data for county");
-        coloringGrid = ColoringGrid.fromJson(countyJson);
+        coloringGrid = ColoringGrid.fromJson(countyJson, Options.COVERAGE_BACKEND.get());
+        GridLayout layout = coloringGrid.getLayout();
+        if (Options.VECTOR_COVERAGE.get()) {
+            if (countyJson.has("vectorCoverage")) vectorCoverage = VectorCoverage.fromEncodedString(countyJson.getString("vectorCoverage"));
+            else vectorCoverage = VectorCoverage.fromRuns(coloringGrid.getRuns(), layout);
+            if (!coloringGrid.isEmpty()) {
+                MapColor color = coloringGrid.getColor();
+                coloringGrid.dispose();
+                coloringGrid = new ColoringGrid(layout, Options.COVERAGE_BACKEND.get());
+                coloringGrid.setColor(color);
+            }
+        } else if (countyJson.has("vectorCoverage")) {
+            VectorCoverage saved = VectorCoverage.fromEncodedString(countyJson.getString("vectorCoverage"));
+            ColoringGrid empty = coloringGrid;
+            coloringGrid = ColoringGrid.fromRuns(saved.toRuns(layout), layout, empty.getColor(), Options.COVERAGE_BACKEND.get());
+            empty.dispose();
+        }
         history = ColoringHistory.decode(Base64.getDecoder().decode(countyJson.getString("history")), coloringGrid.getColor());
     }
 
+    // In vector mode the raster grid is never painted, so anything that needs cells rasterizes the shapes on demand
+    private ColoringGrid getRaster() {
+        if (vectorCoverage == null) return coloringGrid;
+        GridLayout layout = coloringGrid.getLayout();
+        ColoringGrid raster = ColoringGrid.fromRuns(vectorCoverage.toRuns(layout), layout, coloringGrid.getColor(), Options.COVERAGE_BACKEND.get());
+        raster.setMask(coloringGrid.getMask());
+        return raster;
+    }
+
     private void snapshot() {
-        HistorySnapshot snapshot = new HistorySnapshot(coloringGrid);
+        HistorySnapshot snapshot = new HistorySnapshot(getRaster());
         if (history.getSnapshots().isEmpty() || !history.getSnapshots().get(history.getSnapshots().size() - 1).equals(snapshot))
             history.addSnapshot(snapshot);
     }
@@ -387,6 +527,10 @@ public class CountyColorScreen implements Screen, InputProcessor {
     @Override
     public void show() {
         if (loadingFuture != null) Util.getFutureValue(loadingFuture);
+        CoverageMask mask = countyRenderer.getMask(coloringGrid.getLayout());
+        coloringGrid.setMask(mask);
+        maskCardinality = mask.cardinality();
+        if (vectorCoverage != null) vectorCoverage.setCounty(countyRenderer.getClipPaths(VectorCoverage.SCALE));
         InputManager.setInputProcessor(new InputMultiplexer(stage, this));
         lastSnapshotIndex = (int) (getCompletion() * ColoringHistory.MAX_SNAPSHOTS);
         snapshotThread = new SnapshotThread();
@@ -403,12 +547,45 @@ public class CountyColorScreen implements Screen, InputProcessor {
             game.setScreen(new CountyColorMenuScreen(game, CountyColorScreen.this));
             return true;
         } else if (keycode == Input.Keys.TAB) {
-            countyRenderer.highlightUncoloredAreas();
+            showNextUncoloredRegion();
+            return true;
+        } else if (keycode == Input.Keys.F) {
+            fillMode = !fillMode;
+            return true;
+        } else if (keycode >= Input.Keys.NUM_1 && keycode < Input.Keys.NUM_1 + MapColor.values().length && vectorCoverage == null) {
+            coloringGrid.setBrushColor(MapColor.values()[keycode - Input.Keys.NUM_1]);
+            return true;
+        } else if (keycode == Input.Keys.Z && isControlPressed() && !coloring) {
+            boolean shift = Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT) || Gdx.input.isKeyPressed(Input.Keys.SHIFT_RIGHT);
+            if (shift ? redo() : undo()) onStrokeUndoneOrRedone();
+            return true;
+        } else if (keycode == Input.Keys.Y && isControlPressed() && !coloring) {
+            if (redo()) onStrokeUndoneOrRedone();
             return true;
         }
         return false;
     }
 
+    private static boolean isControlPressed() {
+        return Gdx.input.isKeyPressed(Input.Keys.CONTROL_LEFT) || Gdx.input.isKeyPressed(Input.Keys.CONTROL_RIGHT);
+    }
+
+    private boolean undo() {
+        cancelSliverFill();
+        return vectorCoverage != null ? vectorCoverage.undo() : coloringGrid.undo();
+    }
+
+    private boolean redo() {
+        cancelSliverFill();
+        return vectorCoverage != null ? vectorCoverage.redo() : coloringGrid.redo();
+    }
+
+    private void onStrokeUndoneOrRedone() {
+        dirty = true;
+        history.removeSnapshotsNotIn(getRaster());
+        lastSnapshotIndex = (int) (getCompletion() * ColoringHistory.MAX_SNAPSHOTS);
+    }
+
     @Override public boolean mouseMoved(int screenX, int screenY) { return false; }
     @Override public void pause() {}
     @Override public void resume() {}
@@ -5,10 +5,12 @@ import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.scenes.scene2d.*;
 import com.badlogic.gdx.scenes.scene2d.ui.*;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import pitheguy.countycolor.gui.components.InfoTooltip;
 import pitheguy.countycolor.gui.components.ToggleButton;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
 import pitheguy.countycolor.options.Option;
 import pitheguy.countycolor.options.Options;
 import pitheguy.countycolor.util.InputManager;
@@ -37,9 +39,11 @@ public class OptionsScreen extends InputAdapter implements Screen {
         Label title = new Label("Options", skin, "title");
         root.add(title).colspan(2).padTop(20).center().row();
         addOption(root, "Reduce Motion", Options.REDUCE_MOTION, "Disabled animations and transitions.");
-        addOption(root, "Async Grid Updates", Options.ASYNC_GRID_UPDATES, "Improves performance, but may cause artifacts when using larger brush sizes.");
         addOption(root, "Enforce Map Colors", Options.ENFORCE_MAP_COLORS, "Ensures bordering counties never share a color unless no other options are available.");
         addOption(root, "Neighbor Border Colors", Options.NEIGHBOR_BORDER_COLORS, "Displays the color of adjacent counties from other states along shared borders.");
+        addSliderOption(root, "Auto-fill Gaps", Options.SLIVER_FILL_THRESHOLD, 0, 5000, 100, "Automatically colors uncolored pockets smaller than this many grid cells.");
+        addSelectOption(root, "Coverage Storage", Options.COVERAGE_BACKEND, CoverageBackend.values(), "How painted cells are kept in memory. Compressed options use less memory on large counties; applies to newly opened counties.");
+        addOption(root, "Vector Coverage", Options.VECTOR_COVERAGE, "Stores painted areas as exact shapes, allowing deeper zoom and much smaller saves.");
         TextButton doneButton = new TextButton("Done", skin);
         doneButton.addListener(new ClickListener() {
             @Override
@@ -58,6 +62,56 @@ public class OptionsScreen extends InputAdapter implements Screen {
         root.add(button).pad(10).row();
     }
 
+    private void addSliderOption(Table root, String text, Option<Integer> option, int min, int max, int step, String tooltipText) {
+        Label label = new Label(getSliderLabel(text, option.get()), skin);
+        Slider slider = new Slider(min, max, step, false, skin);
+        slider.setValue(option.get());
+        slider.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) {
+                option.set((int) slider.getValue());
+                label.setText(getSliderLabel(text, option.get()));
+            }
+        });
+        addTooltip(slider, tooltipText);
+        root.add(label).pad(10).center();
+        root.add(slider).width(200).pad(10).row();
+    }
+
+    private <E> void addSelectOption(Table root, String text, Option<E> option, E[] values, String tooltipText) {
+        Label label = new Label(text, skin);
+        SelectBox<E> selectBox = new SelectBox<>(skin);
+        selectBox.setItems(values);
+        selectBox.setSelected(option.get());
+        selectBox.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) {
+                option.set(selectBox.getSelected());
+            }
+        });
+        addTooltip(selectBox, tooltipText);
+        root.add(label).pad(10).center();
+        root.add(selectBox).width(200).pad(10).row();
+    }
+
+    private void addTooltip(Actor actor, String tooltipText) {
+        actor.addListener(new InputListener() {
+            @Override
+            public void enter(InputEvent event, float x, float y, int pointer, Actor fromActor) {
+                tooltip.show(stage, null, tooltipText);
+            }
+
+            @Override
+            public void exit(InputEvent event, float x, float y, int pointer, Actor toActor) {
+                tooltip.hide();
+            }
+        });
+    }
+
+    private static String getSliderLabel(String text, int value) {
+        return value == 0 ? text + ": Off" : text + ": " + value + " cells";
+    }
+
     @Override
     public void show() {
         InputManager.setInputProcessor(new InputMultiplexer(stage, this));
@@ -110,17 +164,7 @@ public class OptionsScreen extends InputAdapter implements Screen {
                     option.set(isChecked());
                 }
             });
-            if (tooltipText != null) addListener(new InputListener() {
-                @Override
-                public void enter(InputEvent event, float x, float y, int pointer, Actor fromActor) {
-                    tooltip.show(stage, null, tooltipText);
-                }
-
-                @Override
-                public void exit(InputEvent event, float x, float y, int pointer, Actor toActor) {
-                    tooltip.hide();
-                }
-            });
+            if (tooltipText != null) addTooltip(this, tooltipText);
         }
     }
 }
@@ -25,8 +25,8 @@ public class Option<T> {
 
     public void deserialize(JsonValue json) {
         JsonValue settingJson = json.get(key);
-        if (settingJson != null) value = type.deserialize(settingJson);
-        else value = defaultValue;
+        T saved = settingJson == null ? null : type.deserialize(settingJson);
+        value = saved == null ? defaultValue : saved;
     }
 
     public T get() {
@@ -6,6 +6,15 @@ import java.util.function.Function;
 
 public class OptionType<T> {
     public static OptionType<Boolean> BOOLEAN = new OptionType<>(Boolean.class, JsonValue::new, JsonValue::asBoolean);
+    public static OptionType<Integer> INTEGER = new OptionType<>(Integer.class, JsonValue::new, JsonValue::asInt);
+
+    // Unknown names, such as a value removed since the options were saved, deserialize to null
+    public static <E extends Enum<E>> OptionType<E> forEnum(Class<E> type) {
+        return new OptionType<>(type, value -> new JsonValue(value.name()), json -> {
+            for (E value : type.getEnumConstants()) if (value.name().equals(json.asString())) return value;
+            return null;
+        });
+    }
 
     private final Class<T> type;
     private final Function<T, JsonValue> serializer;
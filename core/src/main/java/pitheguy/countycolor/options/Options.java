@@ -3,14 +3,17 @@ package pitheguy.countycolor.options;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.*;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
 
 import static pitheguy.countycolor.options.OptionsRegistry.register;
 
 public class Options {
     public static final Option<Boolean> REDUCE_MOTION = register(new Option<>("reduce_motion", OptionType.BOOLEAN, false));
-    public static final Option<Boolean> ASYNC_GRID_UPDATES = register(new Option<>("async_grid_updates", OptionType.BOOLEAN, true));
     public static final Option<Boolean> ENFORCE_MAP_COLORS = register(new Option<>("enforce_map_colors", OptionType.BOOLEAN, true));
     public static final Option<Boolean> NEIGHBOR_BORDER_COLORS = register(new Option<>("neighbor_border_colors", OptionType.BOOLEAN, true));
+    public static final Option<CoverageBackend> COVERAGE_BACKEND = register(new Option<>("coverage_backend", OptionType.forEnum(CoverageBackend.class), CoverageBackend.DENSE));
+    public static final Option<Boolean> VECTOR_COVERAGE = register(new Option<>("vector_coverage", OptionType.BOOLEAN, false));
+    public static final Option<Integer> SLIVER_FILL_THRESHOLD = register(new Option<>("sliver_fill_threshold", OptionType.INTEGER, 500));
 
     public static void save() {
         JsonValue json = new JsonValue(JsonValue.ValueType.object);
@@ -0,0 +1,87 @@
+package pitheguy.countycolor.render;
+
+import com.badlogic.gdx.math.Vector2;
+
+import static pitheguy.countycolor.render.util.RenderConst.RENDER_SIZE;
+
+public class DistanceField {
+    public static final int SAMPLES_PER_UNIT = 2;
+    public static final int SIZE = RENDER_SIZE * SAMPLES_PER_UNIT;
+    private static final float INF = 1e20f;
+    private final float[] distances = new float[SIZE * SIZE];
+
+    public DistanceField(boolean[] inside) {
+        float[] toOutside = transform(inside, false);
+        float[] toInside = transform(inside, true);
+        for (int i = 0; i < distances.length; i++) {
+            float distance = inside[i] ? (float) Math.sqrt(toOutside[i]) - 0.5f : 0.5f - (float) Math.sqrt(toInside[i]);
+            distances[i] = distance / SAMPLES_PER_UNIT;
+        }
+    }
+
+    public static float toWorld(int sample) {
+        return (sample + 0.5f) / SAMPLES_PER_UNIT - RENDER_SIZE / 2f;
+    }
+
+    public static int toSample(float world) {
+        return (int) Math.ceil((world + RENDER_SIZE / 2f) * SAMPLES_PER_UNIT - 0.5f);
+    }
+
+    public float getDistance(Vector2 world) {
+        float fx = (world.x + RENDER_SIZE / 2f) * SAMPLES_PER_UNIT - 0.5f;
+        float fy = (world.y + RENDER_SIZE / 2f) * SAMPLES_PER_UNIT - 0.5f;
+        if (fx < 0 || fy < 0 || fx > SIZE - 1 || fy > SIZE - 1) return -INF;
+        int x0 = Math.min((int) fx, SIZE - 2);
+        int y0 = Math.min((int) fy, SIZE - 2);
+        float tx = fx - x0;
+        float ty = fy - y0;
+        float bottom = distances[y0 * SIZE + x0] * (1 - tx) + distances[y0 * SIZE + x0 + 1] * tx;
+        float top = distances[(y0 + 1) * SIZE + x0] * (1 - tx) + distances[(y0 + 1) * SIZE + x0 + 1] * tx;
+        return bottom * (1 - ty) + top * ty;
+    }
+
+    private static float[] transform(boolean[] inside, boolean featureValue) {
+        float[] grid = new float[SIZE * SIZE];
+        for (int i = 0; i < grid.length; i++) grid[i] = inside[i] == featureValue ? 0 : INF;
+        float[] f = new float[SIZE];
+        float[] d = new float[SIZE];
+        int[] v = new int[SIZE];
+        float[] z = new float[SIZE + 1];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) f[y] = grid[y * SIZE + x];
+            transform1D(f, d, v, z);
+            for (int y = 0; y < SIZE; y++) grid[y * SIZE + x] = d[y];
+        }
+        for (int y = 0; y < SIZE; y++) {
+            System.arraycopy(grid, y * SIZE, f, 0, SIZE);
+            transform1D(f, d, v, z);
+            System.arraycopy(d, 0, grid, y * SIZE, SIZE);
+        }
+        return grid;
+    }
+
+    // Felzenszwalb & Huttenlocher: lower envelope of parabolas rooted at each sample
+    private static void transform1D(float[] f, float[] d, int[] v, float[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Float.NEGATIVE_INFINITY;
+        z[1] = Float.POSITIVE_INFINITY;
+        for (int q = 1; q < SIZE; q++) {
+            float s = intersection(f, q, v[k]);
+            while (s <= z[k]) s = intersection(f, q, v[--k]);
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Float.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < SIZE; q++) {
+            while (z[k + 1] < q) k++;
+            d[q] = (float) (q - v[k]) * (q - v[k]) + f[v[k]];
+        }
+    }
+
+    private static float intersection(float[] f, int q, int p) {
+        return ((f[q] + (float) q * q) - (f[p] + (float) p * p)) / (2f * (q - p));
+    }
+}
@@ -69,13 +69,7 @@ public class PolygonCollection {
     }
 
     public boolean isVisibleToCamera(OrthographicCamera camera) {
-        float camMinX = camera.position.x - (camera.viewportWidth * camera.zoom) / 2f;
-        float camMaxX = camera.position.x + (camera.viewportWidth * camera.zoom) / 2f;
-        float camMinY = camera.position.y - (camera.viewportHeight * camera.zoom) / 2f;
-        float camMaxY = camera.position.y + (camera.viewportHeight * camera.zoom) / 2f;
-
-        return maxX * RENDER_SIZE / 2 >= camMinX && minX * RENDER_SIZE / 2 <= camMaxX &&
-               maxY * RENDER_SIZE / 2 >= camMinY && minY * RENDER_SIZE / 2 <= camMaxY;
+        return RenderUtil.isVisibleToCamera(camera, minX * RENDER_SIZE / 2, minY * RENDER_SIZE / 2, maxX * RENDER_SIZE / 2, maxY * RENDER_SIZE / 2);
     }
 
     public List<List<Vector2>> getSharedEdges(PolygonCollection other) {
@@ -1,30 +1,205 @@
 package pitheguy.countycolor.render.renderer;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+import pitheguy.countycolor.coloring.ColorPlane;
 import pitheguy.countycolor.coloring.ColoringGrid;
+import pitheguy.countycolor.coloring.CoveragePyramid;
+import pitheguy.countycolor.coloring.CoverageTile;
+import pitheguy.countycolor.coloring.DirtyRegion;
+import pitheguy.countycolor.coloring.GridLayout;
+import pitheguy.countycolor.coloring.MapColor;
+import pitheguy.countycolor.render.util.RenderUtil;
 
-import static pitheguy.countycolor.render.util.RenderConst.RENDER_SIZE;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ColoringRenderer {
+    public static final int MAX_RESIDENT_TILES = 64;
+    private static final int TEXELS_PER_ROW = CoverageTile.SIZE / 32;
+    private static final int COLOR_TEXELS_PER_ROW = ColorPlane.WORDS_PER_ROW * 2;
+    private static final int COLOR_LEVEL = CoveragePyramid.LEVELS + 1;
     private final SpriteBatch batch = new SpriteBatch();
-    private Texture cachedTexture;
+    private final ShaderProgram shader;
+    private final LinkedHashMap<Integer, Texture> residentTextures = new LinkedHashMap<>(16, 0.75f, true);
+    private final ByteBuffer uploadBuffer = BufferUtils.newByteBuffer(COLOR_TEXELS_PER_ROW * CoverageTile.SIZE * 4).order(ByteOrder.LITTLE_ENDIAN);
+    private final Texture emptyColors;
+    private final Texture palette;
+    private MapColor paletteColor;
+
+    public ColoringRenderer() {
+        shader = new ShaderProgram(Gdx.files.internal("shaders/coverage.vert"), Gdx.files.internal("shaders/coverage.frag"));
+        if (!shader.isCompiled()) throw new IllegalStateException("Failed to compile coverage shader: " + shader.getLog());
+        Pixmap pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+        pixmap.setColor(0, 0, 0, 0);
+        pixmap.fill();
+        emptyColors = new Texture(pixmap);
+        pixmap.dispose();
+        palette = new Texture(MapColor.values().length, 1, Pixmap.Format.RGBA8888);
+    }
 
     public void render(ColoringGrid grid, OrthographicCamera camera) {
-        if (cachedTexture == null || grid.needsTextureUpdate()) {
-            if (cachedTexture != null) cachedTexture.dispose();
-            cachedTexture = new Texture(grid.asPixmap());
-            grid.textureUpdated();
-        }
+        GridLayout layout = grid.getLayout();
+        // The pyramid only stores coverage, so grids painted in several colors always draw full resolution
+        boolean multicolor = grid.hasSecondaryColors();
+        int level = multicolor ? 0 : getPyramidLevel(camera, layout);
+        if (level == 0) updatePalette(grid.getColor());
+        batch.setShader(level == 0 ? shader : null);
         batch.setProjectionMatrix(camera.combined);
+        batch.setColor(grid.getColor().getColor());
         batch.begin();
-        batch.draw(cachedTexture, -RENDER_SIZE / 2f, -RENDER_SIZE / 2f, RENDER_SIZE, RENDER_SIZE);
+        if (level == 0) {
+            shader.setUniformf("u_cells", CoverageTile.SIZE, CoverageTile.SIZE);
+            shader.setUniformi("u_colors", 1);
+            shader.setUniformi("u_palette", 2);
+            palette.bind(2);
+            emptyColors.bind(1);
+            Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
+        }
+        int visibleTiles = 0;
+        for (CoverageTile tile : grid.getTiles()) {
+            float x = layout.toWorldX(tile.getOriginX());
+            float y = layout.toWorldY(tile.getOriginY());
+            float width = (float) tile.getWidth() / layout.getResolution();
+            float height = (float) tile.getHeight() / layout.getResolution();
+            if (!RenderUtil.isVisibleToCamera(camera, x, y, x + width, y + height)) continue;
+            visibleTiles++;
+            float u2 = (float) tile.getWidth() / CoverageTile.SIZE;
+            float v2 = (float) tile.getHeight() / CoverageTile.SIZE;
+            Texture texture;
+            if (level == 0) {
+                texture = getTexture(tile, layout, tile.getDirtyRegion().poll());
+                if (multicolor) {
+                    batch.flush();
+                    (tile.hasColors() ? getColorTexture(tile, layout, tile.getColorDirtyRegion().poll()) : emptyColors).bind(1);
+                    Gdx.gl.glActiveTexture(GL20.GL_TEXTURE0);
+                }
+            } else texture = getPyramidTexture(tile, layout, level);
+            batch.draw(texture, x, y, width, height, 0, 0, u2, v2);
+        }
         batch.end();
+        evictTextures(Math.max(MAX_RESIDENT_TILES, visibleTiles));
+    }
+
+    private static int getPyramidLevel(OrthographicCamera camera, GridLayout layout) {
+        float cellsPerPixel = camera.zoom * layout.getResolution();
+        int level = 0;
+        while (level < CoveragePyramid.LEVELS && CoveragePyramid.getScale(level + 1) <= cellsPerPixel) level++;
+        return level;
+    }
+
+    private static int getTextureKey(CoverageTile tile, GridLayout layout, int level) {
+        return (tile.getTileY() * layout.getTilesX() + tile.getTileX()) * (COLOR_LEVEL + 1) + level;
+    }
+
+    // Index 0 of the color planes is the grid's main color, so the palette starts there
+    private void updatePalette(MapColor color) {
+        if (color == paletteColor) return;
+        paletteColor = color;
+        MapColor[] colors = MapColor.values();
+        Pixmap pixmap = new Pixmap(colors.length, 1, Pixmap.Format.RGBA8888);
+        for (int i = 0; i < colors.length; i++) {
+            pixmap.setColor(colors[(color.ordinal() + i) % colors.length].getColor());
+            pixmap.drawPixel(i, 0);
+        }
+        palette.draw(pixmap, 0, 0);
+        pixmap.dispose();
+    }
+
+    private Texture getTexture(CoverageTile tile, GridLayout layout, DirtyRegion dirtyRegion) {
+        int key = getTextureKey(tile, layout, 0);
+        Texture texture = residentTextures.get(key);
+        if (texture == null) {
+            texture = new Texture(TEXELS_PER_ROW, CoverageTile.SIZE, Pixmap.Format.RGBA8888);
+            residentTextures.put(key, texture);
+            uploadRows(texture, tile, 0, CoverageTile.SIZE);
+        } else if (!dirtyRegion.isEmpty()) uploadRows(texture, tile, dirtyRegion.getStartY(), dirtyRegion.getEndY());
+        return texture;
+    }
+
+    private void uploadRows(Texture texture, CoverageTile tile, int startY, int endY) {
+        ByteBuffer rows = tile.getRowBytes(startY, endY);
+        if (rows == null) {
+            uploadBuffer.clear();
+            tile.copyRows(startY, endY, uploadBuffer.asLongBuffer());
+            rows = uploadBuffer;
+        }
+        texture.bind();
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, startY, TEXELS_PER_ROW, endY - startY,
+            GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, rows);
+    }
+
+    private Texture getColorTexture(CoverageTile tile, GridLayout layout, DirtyRegion dirtyRegion) {
+        int key = getTextureKey(tile, layout, COLOR_LEVEL);
+        Texture texture = residentTextures.get(key);
+        if (texture == null) {
+            texture = new Texture(COLOR_TEXELS_PER_ROW, CoverageTile.SIZE, Pixmap.Format.RGBA8888);
+            residentTextures.put(key, texture);
+            uploadColorRows(texture, tile, 0, CoverageTile.SIZE);
+        } else if (!dirtyRegion.isEmpty()) uploadColorRows(texture, tile, dirtyRegion.getStartY(), dirtyRegion.getEndY());
+        return texture;
+    }
+
+    private void uploadColorRows(Texture texture, CoverageTile tile, int startY, int endY) {
+        uploadBuffer.clear();
+        tile.copyColorRows(startY, endY, uploadBuffer.asLongBuffer());
+        texture.bind();
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, startY, COLOR_TEXELS_PER_ROW, endY - startY,
+            GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, uploadBuffer);
+    }
+
+    private Texture getPyramidTexture(CoverageTile tile, GridLayout layout, int level) {
+        CoveragePyramid pyramid = tile.getPyramid();
+        pyramid.update();
+        int key = getTextureKey(tile, layout, level);
+        DirtyRegion dirtyRegion = pyramid.getUploadRegion(level).poll();
+        Texture texture = residentTextures.get(key);
+        if (texture == null) {
+            int size = CoveragePyramid.getSize(level);
+            texture = new Texture(size, size, Pixmap.Format.LuminanceAlpha);
+            texture.setFilter(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear);
+            residentTextures.put(key, texture);
+            uploadPyramidRows(texture, pyramid, level, 0, size);
+        } else if (!dirtyRegion.isEmpty()) uploadPyramidRows(texture, pyramid, level, dirtyRegion.getStartY(), dirtyRegion.getEndY());
+        return texture;
+    }
+
+    private void uploadPyramidRows(Texture texture, CoveragePyramid pyramid, int level, int startY, int endY) {
+        int size = CoveragePyramid.getSize(level);
+        uploadBuffer.clear();
+        pyramid.copyRows(level, startY, endY, uploadBuffer);
+        uploadBuffer.flip();
+        texture.bind();
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        Gdx.gl.glTexSubImage2D(GL20.GL_TEXTURE_2D, 0, 0, startY, size, endY - startY,
+            GL20.GL_LUMINANCE_ALPHA, GL20.GL_UNSIGNED_BYTE, uploadBuffer);
+    }
+
+    private void evictTextures(int maxResident) {
+        Iterator<Map.Entry<Integer, Texture>> iterator = residentTextures.entrySet().iterator();
+        while (residentTextures.size() > maxResident && iterator.hasNext()) {
+            iterator.next().getValue().dispose();
+            iterator.remove();
+        }
     }
 
     public void dispose() {
         batch.dispose();
-        if (cachedTexture != null) cachedTexture.dispose();
+        shader.dispose();
+        emptyColors.dispose();
+        palette.dispose();
+        for (Texture texture : residentTextures.values()) texture.dispose();
+        residentTextures.clear();
     }
 }
@@ -1,5 +1,6 @@
 package pitheguy.countycolor.render.renderer;
 
+import clipper2.Clipper;
 import clipper2.core.*;
 import clipper2.offset.*;
 import com.badlogic.gdx.Gdx;
@@ -9,20 +10,29 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
+import pitheguy.countycolor.coloring.CoverageMask;
+import pitheguy.countycolor.coloring.GridLayout;
 import pitheguy.countycolor.coloring.MapColor;
+import pitheguy.countycolor.coloring.UncoloredRegion;
 import pitheguy.countycolor.metadata.CountyData;
+import pitheguy.countycolor.render.DistanceField;
 import pitheguy.countycolor.render.PolygonCollection;
 import pitheguy.countycolor.render.util.RenderUtil;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static pitheguy.countycolor.render.util.RenderConst.*;
 
 public class CountyRenderer extends CountyLevelRenderer {
     private final CountyData.County county;
     private float highlightTime = 0;
+    private List<UncoloredRegion> highlightedRegions = Collections.emptyList();
+    private GridLayout highlightLayout;
     private PolygonCollection polygons;
-    private int totalGridSquares = -1;
+    private List<List<Vector2>> clipPolygons;
+    private CoverageMask mask;
+    private DistanceField distanceField;
 
     public CountyRenderer(CountyData.County county) {
         this.county = county;
@@ -75,25 +85,49 @@ public class CountyRenderer extends CountyLevelRenderer {
 
     public void renderHighlight(OrthographicCamera camera, float delta) {
         if (highlightTime > 0) {
-            updateCamera(camera);
-            shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
-            float colorDelta = getDelta();
-            fillSubregion(getCounty().getPolygons(), new Color(1, 1 - colorDelta, 1 - colorDelta, 1));
-            shapeRenderer.end();
+            if (highlightedRegions.isEmpty()) {
+                updateCamera(camera);
+                shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+                float colorDelta = getDelta();
+                fillSubregion(getCounty().getPolygons(), new Color(1, 1 - colorDelta, 1 - colorDelta, 1));
+                shapeRenderer.end();
+            }
             highlightTime -= delta;
         }
     }
 
+    public void renderHighlightedRegions(OrthographicCamera camera) {
+        if (highlightTime <= 0 || highlightedRegions.isEmpty()) return;
+        updateCamera(camera);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
+        float colorDelta = getDelta();
+        shapeRenderer.setColor(new Color(1, 1 - colorDelta, 1 - colorDelta, 1));
+        float padding = 4 * camera.zoom;
+        for (UncoloredRegion region : highlightedRegions) {
+            float x = highlightLayout.toWorldX(region.getMinX()) - padding;
+            float y = highlightLayout.toWorldY(region.getMinY()) - padding;
+            float width = (float) (region.getMaxX() - region.getMinX()) / highlightLayout.getResolution() + padding * 2;
+            float height = (float) (region.getMaxY() - region.getMinY()) / highlightLayout.getResolution() + padding * 2;
+            shapeRenderer.rect(x, y, width, height);
+        }
+        shapeRenderer.end();
+    }
+
     @Override
     protected void loadShapes() {
         counties = StateRenderer.rel(Map.of(county.getName(), county));
         JsonReader reader = new JsonReader();
         JsonValue countyJson = reader.parse(Gdx.files.internal("metadata/counties/" + county.getGeoId() + ".json"));
         polygons = relativize(Map.of(county.getName(), loadSubregion(countyJson))).entrySet().iterator().next().getValue();
-        totalGridSquares = computeTotalGridSquares();
+        clipPolygons = polygons.getPolygons().parallelStream()
+            .flatMap(poly -> shrinkPolygon(scalePolygon(poly)).stream())
+            .collect(Collectors.toList());
+        distanceField = computeDistanceField();
     }
 
-    public void highlightUncoloredAreas() {
+    public void highlightUncoloredAreas(List<UncoloredRegion> regions, GridLayout layout) {
+        highlightedRegions = regions;
+        highlightLayout = layout;
         highlightTime = 1.5f;
     }
 
@@ -103,67 +137,85 @@ public class CountyRenderer extends CountyLevelRenderer {
         return highlightTime * 2;
     }
 
-    public boolean isCoordinateWithinCounty(Vector2 coordinate) {
-        return polygons.contains(coordinate.cpy().scl(2f / RENDER_SIZE));
+    // Built on first use for the layout the grid actually has, which for a loaded save may not be the one a new grid would get
+    public synchronized CoverageMask getMask(GridLayout layout) {
+        ensureLoadingFinished();
+        if (mask == null || !mask.getLayout().equals(layout)) mask = computeMask(layout);
+        return mask;
     }
 
-    public int getTotalGridSquares() {
+    public float getDistanceToBoundary(Vector2 coordinate) {
         ensureLoadingFinished();
-        return totalGridSquares;
+        return distanceField.getDistance(coordinate);
     }
 
-    private int computeTotalGridSquares() {
-        float totalPerimeter = 0;
-        float totalArea = 0;
-        for (List<Vector2> shape : polygons.getPolygons()) {
-            totalPerimeter += RenderUtil.calculatePerimeter(shape);
-            totalArea += RenderUtil.calculateArea(shape);
+    public Paths64 getClipPaths(double scale) {
+        ensureLoadingFinished();
+        Paths64 paths = new Paths64();
+        for (List<Vector2> polygon : clipPolygons) {
+            Path64 path = new Path64(polygon.size());
+            for (Vector2 p : polygon) path.add(new Point64(p.x * scale, p.y * scale));
+            if (Clipper.Area(path) < 0) Collections.reverse(path);
+            paths.add(path);
         }
-        float ratio = totalPerimeter / totalArea;
-        float multiplier = 0.00173616f * ratio + 0.999478f;
-
-        int halfGridSize = COLORING_SIZE / 2;
-        int total = 0;
-        List<List<Vector2>> scaledPolygons = new ArrayList<>();
-        polygons.getPolygons().parallelStream().forEach(poly -> {
-            List<Vector2> scaled = new ArrayList<>();
-            for (Vector2 p : poly) scaled.add(p.cpy().scl(RENDER_SIZE / 2f));
-            List<List<Vector2>> shrunk = shrinkPolygon(scaled);
-            scaledPolygons.addAll(shrunk);
-        });
-        for (int gridY = 0; gridY < COLORING_SIZE; gridY++) {
-            float worldY = ((float) gridY + 0.5f - halfGridSize) / COLORING_RESOLUTION;
-            List<Interval> intervals = new ArrayList<>();
-            for (List<Vector2> poly : scaledPolygons) {
-                List<Float> xIntersections = new ArrayList<>();
-                int n = poly.size();
-                for (int i = 0, j = n - 1; i < n; j = i++) {
-                    float y1 = poly.get(j).y;
-                    float y2 = poly.get(i).y;
-                    if ((y1 <= worldY && y2 > worldY) || (y2 <= worldY && y1 > worldY)) {
-                        float x1 = poly.get(j).x;
-                        float x2 = poly.get(i).x;
-                        float intersectX = x1 + (worldY - y1) * (x2 - x1) / (y2 - y1);
-                        xIntersections.add(intersectX);
-                    }
-                }
-                Collections.sort(xIntersections);
-                for (int k = 0; k < xIntersections.size() - 1; k += 2) {
-                    float startX = xIntersections.get(k);
-                    float endX = xIntersections.get(k + 1);
-                    intervals.add(new Interval(startX, endX));
-                }
+        return Clipper.Union(paths, FillRule.NonZero);
+    }
+
+    private CoverageMask computeMask(GridLayout layout) {
+        CoverageMask mask = new CoverageMask(layout);
+        for (int gridY = 0; gridY < layout.getHeight(); gridY++) {
+            float worldY = layout.toWorldY(gridY + 0.5f);
+            for (Interval inter : getIntervals(clipPolygons, worldY)) {
+                int startGridX = (int) Math.ceil(layout.toGridX(inter.start) - 0.5f);
+                int endGridX = (int) Math.floor(layout.toGridX(inter.end) - 0.5f) + 1;
+                mask.addRange(gridY, startGridX, endGridX);
+            }
+        }
+        return mask;
+    }
+
+    private DistanceField computeDistanceField() {
+        List<List<Vector2>> scaledPolygons = polygons.getPolygons().stream().map(this::scalePolygon).collect(Collectors.toList());
+        boolean[] inside = new boolean[DistanceField.SIZE * DistanceField.SIZE];
+        for (int sampleY = 0; sampleY < DistanceField.SIZE; sampleY++) {
+            for (Interval inter : getIntervals(scaledPolygons, DistanceField.toWorld(sampleY))) {
+                int startX = Math.max(DistanceField.toSample(inter.start), 0);
+                int endX = Math.min(DistanceField.toSample(inter.end), DistanceField.SIZE);
+                if (startX < endX) Arrays.fill(inside, sampleY * DistanceField.SIZE + startX, sampleY * DistanceField.SIZE + endX, true);
             }
-            intervals = mergeIntervals(intervals);
-            for (Interval inter : intervals) {
-                int startGridX = (int) Math.ceil(inter.start * COLORING_RESOLUTION + halfGridSize);
-                int endGridX = (int) Math.floor(inter.end * COLORING_RESOLUTION + halfGridSize);
-                if (endGridX >= startGridX) {
-                    total += (endGridX - startGridX + 1);
+        }
+        return new DistanceField(inside);
+    }
+
+    private List<Vector2> scalePolygon(List<Vector2> polygon) {
+        List<Vector2> scaled = new ArrayList<>();
+        for (Vector2 p : polygon) scaled.add(p.cpy().scl(RENDER_SIZE / 2f));
+        return scaled;
+    }
+
+    private List<Interval> getIntervals(List<List<Vector2>> polygons, float worldY) {
+        List<Interval> intervals = new ArrayList<>();
+        for (List<Vector2> poly : polygons) {
+            List<Float> xIntersections = new ArrayList<>();
+            int n = poly.size();
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                float y1 = poly.get(j).y;
+                float y2 = poly.get(i).y;
+                if ((y1 <= worldY && y2 > worldY) || (y2 <= worldY && y1 > worldY)) {
+                    float x1 = poly.get(j).x;
+                    float x2 = poly.get(i).x;
+                    float intersectX = x1 + (worldY - y1) * (x2 - x1) / (y2 - y1);
+                    xIntersections.add(intersectX);
                 }
             }
+            Collections.sort(xIntersections);
+            for (int k = 0; k < xIntersections.size() - 1; k += 2) {
+                float startX = xIntersections.get(k);
+                float endX = xIntersections.get(k + 1);
+                intervals.add(new Interval(startX, endX));
+            }
         }
-        return (int) (total * multiplier);
+        return mergeIntervals(intervals);
     }
 
     private List<List<Vector2>> shrinkPolygon(List<Vector2> polygon) {
@@ -0,0 +1,94 @@
+package pitheguy.countycolor.render.renderer;
+
+import clipper2.core.Path64;
+import clipper2.core.Paths64;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import pitheguy.countycolor.coloring.VectorCoverage;
+import pitheguy.countycolor.render.util.RenderUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fills the coverage union with the even-odd stencil trick: every ring is drawn as a triangle fan that inverts the
+// stencil, leaving odd-parity (inside) pixels set. Only rings overlapping the camera are submitted.
+public class VectorCoverageRenderer {
+    private final ShapeRenderer shapeRenderer = new ShapeRenderer();
+    private final List<float[]> rings = new ArrayList<>();
+    private final List<float[]> ringBounds = new ArrayList<>();
+    private int cachedVersion = -1;
+
+    public void render(VectorCoverage coverage, OrthographicCamera camera, Color color) {
+        if (coverage.getVersion() != cachedVersion) {
+            cachedVersion = coverage.getVersion();
+            rings.clear();
+            ringBounds.clear();
+            for (Path64 path : coverage.getCoverage()) {
+                float[] ring = toWorld(path);
+                rings.add(ring);
+                ringBounds.add(getBounds(ring));
+            }
+        }
+        shapeRenderer.setProjectionMatrix(camera.combined);
+        Gdx.gl.glClearStencil(0);
+        Gdx.gl.glClear(GL20.GL_STENCIL_BUFFER_BIT);
+        Gdx.gl.glEnable(GL20.GL_STENCIL_TEST);
+        Gdx.gl.glColorMask(false, false, false, false);
+        Gdx.gl.glStencilFunc(GL20.GL_ALWAYS, 0, 1);
+        Gdx.gl.glStencilOp(GL20.GL_KEEP, GL20.GL_KEEP, GL20.GL_INVERT);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        for (int i = 0; i < rings.size(); i++) {
+            float[] bounds = ringBounds.get(i);
+            if (RenderUtil.isVisibleToCamera(camera, bounds[0], bounds[1], bounds[2], bounds[3])) drawFan(rings.get(i));
+        }
+        shapeRenderer.end();
+        Gdx.gl.glColorMask(true, true, true, true);
+        Gdx.gl.glStencilFunc(GL20.GL_EQUAL, 1, 1);
+        Gdx.gl.glStencilOp(GL20.GL_KEEP, GL20.GL_KEEP, GL20.GL_KEEP);
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        shapeRenderer.setColor(color);
+        float halfWidth = camera.viewportWidth * camera.zoom / 2;
+        float halfHeight = camera.viewportHeight * camera.zoom / 2;
+        shapeRenderer.rect(camera.position.x - halfWidth, camera.position.y - halfHeight, halfWidth * 2, halfHeight * 2);
+        shapeRenderer.end();
+        Gdx.gl.glDisable(GL20.GL_STENCIL_TEST);
+        Paths64 strokeCapsules = coverage.getStrokeCapsules();
+        if (strokeCapsules == null || strokeCapsules.isEmpty()) return;
+        shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+        shapeRenderer.setColor(color);
+        for (Path64 capsule : strokeCapsules) drawFan(toWorld(capsule));
+        shapeRenderer.end();
+    }
+
+    private void drawFan(float[] ring) {
+        for (int i = 2; i + 3 < ring.length; i += 2)
+            shapeRenderer.triangle(ring[0], ring[1], ring[i], ring[i + 1], ring[i + 2], ring[i + 3]);
+    }
+
+    private static float[] toWorld(Path64 path) {
+        float[] ring = new float[path.size() * 2];
+        for (int i = 0; i < path.size(); i++) {
+            ring[i * 2] = (float) (path.get(i).x / VectorCoverage.SCALE);
+            ring[i * 2 + 1] = (float) (path.get(i).y / VectorCoverage.SCALE);
+        }
+        return ring;
+    }
+
+    private static float[] getBounds(float[] ring) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < ring.length; i += 2) {
+            bounds[0] = Math.min(bounds[0], ring[i]);
+            bounds[1] = Math.min(bounds[1], ring[i + 1]);
+            bounds[2] = Math.max(bounds[2], ring[i]);
+            bounds[3] = Math.max(bounds[3], ring[i + 1]);
+        }
+        return bounds;
+    }
+
+    public void dispose() {
+        shapeRenderer.dispose();
+    }
+}
@@ -93,6 +93,14 @@ public class RenderUtil {
                maxY * scaleAmt + OUTLINE_THICKNESS >= camMinY && minY * scaleAmt - OUTLINE_THICKNESS <= camMaxY;
     }
 
+    public static boolean isVisibleToCamera(OrthographicCamera camera, float minX, float minY, float maxX, float maxY) {
+        float camMinX = camera.position.x - (camera.viewportWidth * camera.zoom) / 2f;
+        float camMaxX = camera.position.x + (camera.viewportWidth * camera.zoom) / 2f;
+        float camMinY = camera.position.y - (camera.viewportHeight * camera.zoom) / 2f;
+        float camMaxY = camera.position.y + (camera.viewportHeight * camera.zoom) / 2f;
+        return maxX >= camMinX && minX <= camMaxX && maxY >= camMinY && minY <= camMaxY;
+    }
+
 
     public static ShortArray triangulate(List<Vector2> points) {
         float[] vertices = new float[points.size() * 2];
@@ -1,5 +0,0 @@
-package pitheguy.countycolor.util;
-
-public class DebugFlags {
-    public static boolean RENDER_CURSOR_TEST_POINTS = false;
-}
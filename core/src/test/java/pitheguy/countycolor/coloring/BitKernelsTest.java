@@ -0,0 +1,83 @@
+package pitheguy.countycolor.coloring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.ToIntBiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+// Runs against whichever kernels were loaded, which is only the vector ones when the module is on the boot layer
+class BitKernelsTest {
+    private static final BitKernels SCALAR = new ScalarBitKernels();
+
+    @Test
+    public void testMatchesScalar() {
+        assumeFalse(BitKernels.INSTANCE instanceof ScalarBitKernels, "jdk.incubator.vector isn't available");
+        Random random = new Random(1);
+        for (int trial = 0; trial < 2000; trial++) {
+            // Lengths below, at and past a few vector widths so every tail loop gets exercised
+            int length = trial < 100 ? trial : random.nextInt(4200);
+            long[] words = randomWords(random, length + random.nextInt(3));
+            long[] other = randomWords(random, words.length);
+            String name = "trial " + trial + ", length " + length;
+            assertEquals(SCALAR.cardinality(words, length), BitKernels.INSTANCE.cardinality(words, length), name);
+            assertEquals(SCALAR.countRuns(words, length), BitKernels.INSTANCE.countRuns(words, length), name);
+            assertSameResult(words, other, length, name, (kernels, target) -> {
+                kernels.and(target, other, length);
+                return 0;
+            });
+            assertSameResult(words, other, length, name, (kernels, target) -> {
+                kernels.andNot(target, other, length);
+                return 0;
+            });
+            assertSameResult(words, other, length, name, (kernels, target) -> kernels.retainAll(target, other, length));
+            assertSameGather(random, words, length, name);
+        }
+    }
+
+    private static void assertSameGather(Random random, long[] words, int count, String name) {
+        if (words.length == 0) return;
+        int[] wordIndices = new int[count];
+        long[] shifts = new long[count];
+        for (int i = 0; i < count; i++) {
+            wordIndices[i] = random.nextInt(words.length);
+            shifts[i] = random.nextInt(64);
+        }
+        // Garbage in the destination checks that covered words are overwritten and the rest left alone
+        long[] expected = randomWords(random, (count + 63) / 64 + 2);
+        long[] actual = expected.clone();
+        SCALAR.gatherBits(words, wordIndices, shifts, expected, count);
+        BitKernels.INSTANCE.gatherBits(words, wordIndices, shifts, actual, count);
+        assertArrayEquals(expected, actual, name);
+        for (int i = 0; i < count; i++)
+            assertEquals(words[wordIndices[i]] >>> shifts[i] & 1, actual[i >> 6] >>> i & 1, name + ", bit " + i);
+    }
+
+    private static void assertSameResult(long[] words, long[] other, int length, String name, ToIntBiFunction<BitKernels, long[]> operation) {
+        long[] expected = words.clone();
+        long[] actual = words.clone();
+        assertEquals(operation.applyAsInt(SCALAR, expected), operation.applyAsInt(BitKernels.INSTANCE, actual), name);
+        assertArrayEquals(expected, actual, name);
+        assertArrayEquals(words.length > length ? Arrays.copyOfRange(words, length, words.length) : new long[0],
+                Arrays.copyOfRange(actual, length, words.length), name + " wrote past the length");
+    }
+
+    // Mixes the word shapes the bitmaps actually hold: empty, full, sparse, single runs and noise
+    private static long[] randomWords(Random random, int length) {
+        long[] words = new long[length];
+        int shape = random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            words[i] = switch (random.nextInt(shape == 0 ? 2 : 5)) {
+                case 0 -> 0;
+                case 1 -> -1L;
+                case 2 -> 1L << random.nextInt(64);
+                case 3 -> (-1L << random.nextInt(64)) & (-1L >>> random.nextInt(64));
+                default -> random.nextLong();
+            };
+        }
+        return words;
+    }
+}
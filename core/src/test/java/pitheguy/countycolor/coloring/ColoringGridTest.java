@@ -0,0 +1,291 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.JsonValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+import pitheguy.countycolor.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.LongBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColoringGridTest {
+    // Spans several tiles and two groups of block rows, with a partial last tile in both directions
+    private static final GridLayout LAYOUT = new GridLayout(10, 1300, 1100);
+    // Saved before the format byte: one GZIP stream holding a rectangle and a disc on the default grid
+    private static final String LEGACY_SAVE = "H4sIAAAAAAAA/+2YyW7aQBjHBxPClhBIWBPA7BjMjsEsZsdAAgkQEkjiJCTtw1TqMW9SqYdK7bGHVuoD9HHqj6lLpaonuLSa3ycBAmPNf5nDWKUiEAgEAmETKIpC6CvK/ScQa/7KNq1BSIM+OL4X/3yvb+LXW36biyQQCAQCgUAgEAhbB6F3Lwbqaedx914n6W+Ni/256co8s0yPJtax7dwxcg5dpycDd9/T84p019fxtwOtYDPUCNcjtajAVGOVeCVeZksJPskni6lCmstwmXwWDgTZvPyRSxfShVRR/pFPlBIltsyW5T9UYlUYRmCEaC1ai9Rhwg2YUBMm2MITaOPxd5TxdRFyvlHRDZYrsLWg6B7ap+aFUdIuqc8iQu+/6VSv1c+apfZBLxnu9m5M84Nry+zw0jqxje0XzpFreHzmHnj63h4t+rr+TqAdbIWa4UakHq0xQqwar8AaE6UknyqmiulChsvms/lcTn7JchlZTFr+OsUnZTEJ+UIW9IMYAcQwspgoiFlJCa+khLCUn0ICipCuTxmR3nKkX37dukuLm8z6PuCUMkomSkY4MZweThIyBTtwypA39hRcBV+hE9AN8BWchc6Ar9AhcBV7KjCrI/x6PT3vJvO7srUuRZUSD9aEg8MhgiKIFQcMinDlofRQe6gD1AJqD8WHukDtoT5Qelz5WHXLIQtQNKgYVAvqBP70PQP36cnQNXKeO8a2iXV6NLNcmeemxf6tUdLf6x53n3ZeUZ94hFzykV+91ErGhXlqH7rFYI0tcGyDfknDYwDYlrAhYSPC5oMieXuevntwfOYaOkf2C9vYOjm8tMwOrk3zvRvDnV7SPmiW6mfVR/IYgEAgEP5BfgC1U5OfnB4AAA==";
+
+    @Test
+    public void testEmptyRoundTrip() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        byte[] encoded = Base64.getDecoder().decode(grid.asEncodedString());
+        assertEquals(2, encoded[0]);
+        ColoringGrid decoded = roundTrip(grid, CoverageBackend.DENSE);
+        assertEquals(0, decoded.coloredPoints());
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void testFullRoundTrip() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        IntArray runs = new IntArray();
+        for (int y = 0; y < LAYOUT.getHeight(); y++) runs.add(y, 0, LAYOUT.getWidth());
+        grid.applyRuns(runs);
+        ColoringGrid decoded = roundTrip(grid, CoverageBackend.DENSE);
+        assertEquals(LAYOUT.getWidth() * LAYOUT.getHeight(), decoded.coloredPoints());
+        assertSameCells(grid, decoded);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testPartialRoundTrip(CoverageBackend backend) {
+        ColoringGrid grid = createGrid(backend);
+        paintRandomStrokes(grid, new Random(1), false);
+        ColoringGrid decoded = roundTrip(grid, backend);
+        assertEquals(grid.coloredPoints(), decoded.coloredPoints());
+        assertFalse(decoded.hasSecondaryColors());
+        assertSameCells(grid, decoded);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testMulticolorRoundTrip(CoverageBackend backend) {
+        ColoringGrid grid = createGrid(backend);
+        paintRandomStrokes(grid, new Random(2), true);
+        ColoringGrid decoded = roundTrip(grid, backend);
+        assertEquals(grid.coloredPoints(), decoded.coloredPoints());
+        assertArrayEquals(grid.getColorCounts(), decoded.getColorCounts());
+        assertSameCells(grid, decoded);
+    }
+
+    @Test
+    public void testUndoAndRedoSecondaryColors() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        grid.applyBrush(new Vector2(0, 0), 20);
+        int[] mainOnly = grid.getColorCounts();
+        grid.setBrushColor(MapColor.MAGENTA);
+        grid.beginStroke();
+        grid.applyStroke(new Vector2(-60, 10), new Vector2(60, 20), 15);
+        grid.endStroke();
+        assertTrue(grid.hasSecondaryColors());
+        int[] withStroke = grid.getColorCounts();
+        assertTrue(grid.undo());
+        // The color planes still hold the stroke's bits, but none of those cells are covered any more
+        assertFalse(grid.hasSecondaryColors());
+        assertEquals(MapColor.GREEN, grid.getDominantColor());
+        assertArrayEquals(mainOnly, grid.getColorCounts());
+        assertTrue(grid.redo());
+        assertTrue(grid.hasSecondaryColors());
+        assertArrayEquals(withStroke, grid.getColorCounts());
+        int x = (int) LAYOUT.toGridX(50);
+        int y = (int) LAYOUT.toGridY(19);
+        assertEquals(MapColor.MAGENTA.ordinal() - MapColor.GREEN.ordinal() & 3, getColorIndex(grid, x, y));
+    }
+
+    @Test
+    public void testColorRowsUploadedAfterUndo() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        grid.setBrushColor(MapColor.MAGENTA);
+        paintStroke(grid, new Vector2(-45, -35), new Vector2(-30, -35), 3);
+        // Stands in for the renderer's color texture: copied in full once, then only along polled dirty rows
+        CoverageTile tile = grid.getTiles().get(0);
+        long[] resident = getColorRows(tile, 0, CoverageTile.SIZE);
+        tile.getColorDirtyRegion().poll();
+        assertTrue(grid.undo());
+        assertFalse(grid.hasSecondaryColors());
+        // Single-color frames only upload coverage, while this stroke writes index 0 over the undone rows
+        grid.setBrushColor(MapColor.GREEN);
+        paintStroke(grid, new Vector2(-45, -35), new Vector2(-30, -35), 5);
+        tile.getDirtyRegion().poll();
+        grid.setBrushColor(MapColor.MAGENTA);
+        paintStroke(grid, new Vector2(-45, -20), new Vector2(-30, -20), 3);
+        assertTrue(grid.hasSecondaryColors());
+        DirtyRegion dirtyRegion = tile.getColorDirtyRegion().poll();
+        long[] rows = getColorRows(tile, dirtyRegion.getStartY(), dirtyRegion.getEndY());
+        System.arraycopy(rows, 0, resident, dirtyRegion.getStartY() * ColorPlane.WORDS_PER_ROW, rows.length);
+        assertArrayEquals(getColorRows(tile, 0, CoverageTile.SIZE), resident);
+    }
+
+    @Test
+    public void testSliverRunsJoinLastStroke() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        paintStroke(grid, new Vector2(-40, 0), new Vector2(-20, 0), 3);
+        int firstStroke = grid.coloredPoints();
+        paintStroke(grid, new Vector2(20, 0), new Vector2(40, 0), 3);
+        int bothStrokes = grid.coloredPoints();
+        IntArray slivers = new IntArray();
+        slivers.add(100, 100, 110);
+        slivers.add(101, 100, 110);
+        assertEquals(20, grid.applySliverRuns(slivers));
+        assertTrue(grid.undo());
+        assertEquals(firstStroke, grid.coloredPoints());
+        assertFalse(grid.get(100, 100));
+        assertTrue(grid.redo());
+        assertEquals(bothStrokes + 20, grid.coloredPoints());
+        // Filling after an undo joins the stroke before it and leaves the undone one to redo
+        assertTrue(grid.undo());
+        slivers.clear();
+        slivers.add(200, 100, 105);
+        assertEquals(5, grid.applySliverRuns(slivers));
+        assertTrue(grid.redo());
+        assertEquals(bothStrokes + 25, grid.coloredPoints());
+        assertTrue(grid.undo());
+        assertTrue(grid.undo());
+        assertTrue(grid.isEmpty());
+        assertFalse(grid.undo());
+    }
+
+    private static void paintStroke(ColoringGrid grid, Vector2 from, Vector2 to, float brushSize) {
+        grid.beginStroke();
+        grid.applyStroke(from, to, brushSize);
+        grid.endStroke();
+    }
+
+    private static long[] getColorRows(CoverageTile tile, int startY, int endY) {
+        LongBuffer buffer = LongBuffer.allocate((endY - startY) * ColorPlane.WORDS_PER_ROW);
+        tile.copyColorRows(startY, endY, buffer);
+        return buffer.array();
+    }
+
+    @Test
+    public void testTruncatedGroupFailsToLoad() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        paintRandomStrokes(grid, new Random(3), false);
+        byte[] data = Base64.getDecoder().decode(grid.asEncodedString());
+        ByteArrayInputStream in = new ByteArrayInputStream(data, 1, data.length - 1);
+        int rowsPerGroup = Util.readVarInt(in);
+        int groups = Util.readVarInt(in);
+        assertTrue(groups > 1);
+        int[] lengths = new int[groups];
+        for (int i = 0; i < groups; i++) lengths[i] = Util.readVarInt(in);
+        byte[] payload = in.readAllBytes();
+        // Cut the last group short, keeping the header consistent with what's left
+        int cut = lengths[groups - 1] / 2;
+        lengths[groups - 1] -= cut;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data[0]);
+        Util.writeVarInt(rowsPerGroup, out);
+        Util.writeVarInt(groups, out);
+        for (int length : lengths) Util.writeVarInt(length, out);
+        out.write(payload, 0, payload.length - cut);
+        JsonValue json = new JsonValue(JsonValue.ValueType.object);
+        json.addChild("color", new JsonValue(grid.getColor().getSerializedName()));
+        json.addChild("gridLayout", grid.getLayout().toJson());
+        json.addChild("coloredPoints", new JsonValue(Base64.getEncoder().encodeToString(out.toByteArray())));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> ColoringGrid.fromJson(json, CoverageBackend.DENSE));
+        assertEquals("Failed to decode coloring grid", exception.getMessage());
+    }
+
+    @Test
+    public void testLegacySave() {
+        JsonValue json = new JsonValue(JsonValue.ValueType.object);
+        json.addChild("color", new JsonValue(MapColor.CYAN.getSerializedName()));
+        json.addChild("coloredPoints", new JsonValue(LEGACY_SAVE));
+        ColoringGrid grid = ColoringGrid.fromJson(json, CoverageBackend.DENSE);
+        assertEquals(GridLayout.DEFAULT, grid.getLayout());
+        assertEquals(350 * 230 + countDisc(), grid.coloredPoints());
+        for (int y = 1990; y < 2240; y++)
+            for (int x = 990; x < 1360; x++)
+                assertEquals(isInLegacyShape(x, y), grid.get(x, y), x + ", " + y);
+        for (int y = 5890; y < 6150; y++)
+            for (int x = 4920; x < 5180; x++)
+                assertEquals(isInLegacyShape(x, y), grid.get(x, y), x + ", " + y);
+    }
+
+    @Test
+    public void testFillStaysInMask() {
+        ColoringGrid grid = createGrid(CoverageBackend.DENSE);
+        Vector2 seed = new Vector2(LAYOUT.toWorldX(420.5f), LAYOUT.toWorldY(420.5f));
+        assertEquals(0, grid.fill(seed));
+        assertTrue(grid.isEmpty());
+        CoverageMask mask = new CoverageMask(LAYOUT);
+        for (int y = 400; y < 700; y++)
+            for (int x = 400; x < 700; x++)
+                if (isInConcaveShape(x, y)) mask.addRange(y, x, x + 1);
+        grid.setMask(mask);
+        // Walls off the end of the upper arm so the fill has to stop at colored cells as well as the mask
+        IntArray wall = new IntArray();
+        for (int y = 580; y < 700; y++) wall.add(y, 600, 605);
+        grid.applyRuns(wall);
+        assertEquals(mask.cardinality() - 5 * 120 - 95 * 120, grid.fill(seed));
+        for (int y = 380; y < 720; y++) {
+            for (int x = 380; x < 720; x++) {
+                boolean pocket = x >= 605 && y >= 580 && y < 700;
+                assertEquals(isInConcaveShape(x, y) && !pocket, grid.get(x, y), x + ", " + y);
+            }
+        }
+        assertEquals(0, grid.fill(seed));
+    }
+
+    // A square with a notch cut into its right side and a hole straddling the tile corner
+    private static boolean isInConcaveShape(int x, int y) {
+        if (x < 400 || x >= 700 || y < 400 || y >= 700) return false;
+        if (x >= 550 && y >= 520 && y < 580) return false;
+        return x < 490 || x >= 530 || y < 490 || y >= 530;
+    }
+
+    private static boolean isInLegacyShape(int x, int y) {
+        if (x >= 1000 && x < 1350 && y >= 2000 && y < 2230) return true;
+        int dx = x - 5050;
+        int dy = y - 6020;
+        return dx * dx + dy * dy < 120 * 120;
+    }
+
+    private static int countDisc() {
+        int count = 0;
+        for (int dy = -120; dy <= 120; dy++)
+            for (int dx = -120; dx <= 120; dx++)
+                if (dx * dx + dy * dy < 120 * 120) count++;
+        return count;
+    }
+
+    private static ColoringGrid createGrid(CoverageBackend backend) {
+        ColoringGrid grid = new ColoringGrid(LAYOUT, backend);
+        grid.setColor(MapColor.GREEN);
+        return grid;
+    }
+
+    private static void paintRandomStrokes(ColoringGrid grid, Random random, boolean multicolor) {
+        float halfWidth = LAYOUT.getWidth() / 2f / LAYOUT.getResolution();
+        float halfHeight = LAYOUT.getHeight() / 2f / LAYOUT.getResolution();
+        for (int i = 0; i < 60; i++) {
+            if (multicolor) grid.setBrushColor(MapColor.values()[random.nextInt(MapColor.values().length)]);
+            Vector2 from = new Vector2((random.nextFloat() * 2 - 1) * halfWidth, (random.nextFloat() * 2 - 1) * halfHeight);
+            Vector2 to = from.cpy().add(random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+            grid.applyStroke(from, to, 1 + random.nextFloat() * 8);
+        }
+    }
+
+    private static ColoringGrid roundTrip(ColoringGrid grid, CoverageBackend backend) {
+        JsonValue json = new JsonValue(JsonValue.ValueType.object);
+        json.addChild("color", new JsonValue(grid.getColor().getSerializedName()));
+        json.addChild("gridLayout", grid.getLayout().toJson());
+        json.addChild("coloredPoints", new JsonValue(grid.asEncodedString()));
+        return ColoringGrid.fromJson(json, backend);
+    }
+
+    private static void assertSameCells(ColoringGrid expected, ColoringGrid actual) {
+        assertEquals(expected.getLayout(), actual.getLayout());
+        for (int y = 0; y < LAYOUT.getHeight(); y++) {
+            for (int x = 0; x < LAYOUT.getWidth(); x++) {
+                assertEquals(expected.get(x, y), actual.get(x, y), x + ", " + y);
+                if (expected.get(x, y)) assertEquals(getColorIndex(expected, x, y), getColorIndex(actual, x, y), x + ", " + y);
+            }
+        }
+    }
+
+    private static int getColorIndex(ColoringGrid grid, int x, int y) {
+        for (CoverageTile tile : grid.getTiles())
+            if (tile.getTileX() == x / CoverageTile.SIZE && tile.getTileY() == y / CoverageTile.SIZE)
+                return tile.getColorIndex(x - tile.getOriginX(), y - tile.getOriginY());
+        return 0;
+    }
+}
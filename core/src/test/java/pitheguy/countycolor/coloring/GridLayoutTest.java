@@ -0,0 +1,36 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.Vector2;
+import org.junit.jupiter.api.Test;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+import pitheguy.countycolor.render.PolygonCollection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridLayoutTest {
+    @Test
+    public void testResolutionScaleOnSmallCounty() {
+        PolygonCollection county = box(-86.9f, 32.3f, -86.85f, 32.33f);
+        GridLayout dense = GridLayout.forCounty(county, CoverageBackend.DENSE);
+        GridLayout quadtree = GridLayout.forCounty(county, CoverageBackend.QUADTREE);
+        assertEquals(dense.getResolution() * CoverageBackend.QUADTREE.getResolutionScale(), quadtree.getResolution());
+    }
+
+    @Test
+    public void testResolutionScaleStaysUnderCellCap() {
+        // Big enough that the dense grid is already capped, so the finer backend can't go any further
+        PolygonCollection county = box(-117.8f, 33.9f, -114.1f, 35.8f);
+        GridLayout dense = GridLayout.forCounty(county, CoverageBackend.DENSE);
+        GridLayout quadtree = GridLayout.forCounty(county, CoverageBackend.QUADTREE);
+        assertEquals(dense.getResolution(), quadtree.getResolution());
+        assertEquals(dense, quadtree);
+    }
+
+    private static PolygonCollection box(float minX, float minY, float maxX, float maxY) {
+        List<Vector2> ring = new ArrayList<>(List.of(new Vector2(minX, minY), new Vector2(maxX, minY), new Vector2(maxX, maxY), new Vector2(minX, maxY)));
+        return new PolygonCollection(new ArrayList<>(List.of(ring)));
+    }
+}
@@ -0,0 +1,127 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.Vector2;
+import org.junit.jupiter.api.Test;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cells are covered when their center is strictly closer to the stroke's segment than the radius
+class StrokeGeometryTest {
+    private static final GridLayout LAYOUT = new GridLayout(4, 1100, 700);
+    // Cells this close to the capsule's outline can go either way from float rounding
+    private static final double TOLERANCE = 1e-2;
+
+    @Test
+    public void testCapsuleChordMatchesDistance() {
+        Random random = new Random(1);
+        float[] chord = new float[2];
+        for (int i = 0; i < 500; i++) {
+            float startX = random.nextFloat() * 200;
+            float startY = random.nextFloat() * 200;
+            float endX = i % 5 == 0 ? startX : startX + random.nextFloat() * 100 - 50;
+            float endY = i % 7 == 0 ? startY : startY + random.nextFloat() * 100 - 50;
+            float radius = 0.3f + random.nextFloat() * 20;
+            for (int y = -30; y < 260; y++) {
+                boolean hit = ColoringGrid.capsuleChord(startX, startY, endX, endY, radius, y + 0.5f, chord);
+                int chordStart = hit ? (int) Math.ceil(chord[0] - 0.5f) : 0;
+                int chordEnd = hit ? (int) Math.floor(chord[1] - 0.5f) + 1 : 0;
+                for (int x = -30; x < 260; x++) {
+                    double distance = distanceToSegment(x + 0.5, y + 0.5, startX, startY, endX, endY);
+                    if (Math.abs(distance - radius) < TOLERANCE) continue;
+                    assertEquals(distance < radius, x >= chordStart && x < chordEnd, "capsule " + i + " at " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStrokesAtTileEdges() {
+        int right = LAYOUT.getWidth();
+        int top = LAYOUT.getHeight();
+        float[][] strokes = {
+                {512, 100, 512, 600, 6},
+                {100, 511.5f, 1000, 512.5f, 9},
+                {510, 510, 514, 514, 3.2f},
+                {0, 0, 0, 0, 20},
+                {right, top, right - 40, top - 3, 15},
+                {1023.9f, 200, 1024.1f, 650, 0.6f},
+                {-20, 350, right + 20, 352, 4.5f},
+                {300, -10, 800, top + 10, 30},
+        };
+        for (float[] stroke : strokes) {
+            ColoringGrid grid = new ColoringGrid(LAYOUT, CoverageBackend.DENSE);
+            grid.setColor(MapColor.GREEN);
+            Vector2 from = new Vector2(LAYOUT.toWorldX(stroke[0]), LAYOUT.toWorldY(stroke[1]));
+            Vector2 to = new Vector2(LAYOUT.toWorldX(stroke[2]), LAYOUT.toWorldY(stroke[3]));
+            grid.applyStroke(from, to, stroke[4] / LAYOUT.getResolution());
+            float startX = LAYOUT.toGridX(from.x);
+            float startY = LAYOUT.toGridY(from.y);
+            float endX = LAYOUT.toGridX(to.x);
+            float endY = LAYOUT.toGridY(to.y);
+            int expected = 0;
+            for (int y = 0; y < top; y++) {
+                for (int x = 0; x < right; x++) {
+                    double distance = distanceToSegment(x + 0.5, y + 0.5, startX, startY, endX, endY);
+                    if (distance < stroke[4]) expected++;
+                    if (Math.abs(distance - stroke[4]) < TOLERANCE) continue;
+                    assertEquals(distance < stroke[4], grid.get(x, y), x + ", " + y);
+                }
+            }
+            assertEquals(expected, grid.coloredPoints(), 2);
+            for (CoverageTile tile : grid.getTiles()) assertDirtyRegionBoundsCells(tile);
+        }
+    }
+
+    @Test
+    public void testDirtyRegion() {
+        DirtyRegion region = new DirtyRegion();
+        assertTrue(region.isEmpty());
+        region.add(5, 5, 5, 10);
+        assertTrue(region.isEmpty());
+        region.add(10, 20, 30, 21);
+        region.add(0, 40, 1, 50);
+        assertFalse(region.isEmpty());
+        DirtyRegion polled = region.poll();
+        assertTrue(region.isEmpty());
+        assertEquals(0, polled.getStartX());
+        assertEquals(20, polled.getStartY());
+        assertEquals(30, polled.getEndX());
+        assertEquals(50, polled.getEndY());
+    }
+
+    // The dirty region must be exactly the bounding box of what a fresh tile got painted
+    private static void assertDirtyRegionBoundsCells(CoverageTile tile) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int y = 0; y < tile.getHeight(); y++) {
+            for (int x = 0; x < tile.getWidth(); x++) {
+                if (!tile.get(x, y)) continue;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x + 1);
+                maxY = Math.max(maxY, y + 1);
+            }
+        }
+        DirtyRegion region = tile.getDirtyRegion().poll();
+        String name = "tile " + tile.getTileX() + ", " + tile.getTileY();
+        if (minX == Integer.MAX_VALUE) {
+            assertTrue(region.isEmpty(), name);
+            return;
+        }
+        assertEquals(minX, region.getStartX(), name);
+        assertEquals(minY, region.getStartY(), name);
+        assertEquals(maxX, region.getEndX(), name);
+        assertEquals(maxY, region.getEndY(), name);
+        assertTrue(tile.getDirtyRegion().isEmpty(), name);
+    }
+
+    private static double distanceToSegment(double x, double y, double startX, double startY, double endX, double endY) {
+        double dx = endX - startX;
+        double dy = endY - startY;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - startX) * dx + (y - startY) * dy) / lengthSquared));
+        return Math.hypot(x - startX - t * dx, y - startY - t * dy);
+    }
+}
@@ -0,0 +1,143 @@
+package pitheguy.countycolor.coloring;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UncoloredRegionsTest {
+    // Three tiles across and two up, with partial tiles on the right and top
+    private static final GridLayout LAYOUT = new GridLayout(4, 1100, 700);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    public void testRandomStrokesMatchFloodFill(int seed) {
+        ColoringGrid grid = createGrid(createRingMask());
+        Random random = new Random(seed);
+        for (int i = 0; i < 40; i++) {
+            paintRandomStroke(grid, random);
+            if (i % 10 == 9) assertMatchesFloodFill(grid);
+        }
+    }
+
+    @Test
+    public void testRegionsAcrossTileBoundaries() {
+        CoverageMask mask = new CoverageMask(LAYOUT);
+        for (int y = 0; y < LAYOUT.getHeight(); y++) mask.addRange(y, 0, LAYOUT.getWidth());
+        ColoringGrid grid = createGrid(mask);
+        IntArray runs = new IntArray();
+        // A wall along the first tile column boundary with a gap, and a ring straddling the corner of four tiles
+        for (int y = 0; y < LAYOUT.getHeight(); y++) if (y < 300 || y > 310) runs.add(y, 510, 514);
+        for (int y = 480; y < 545; y++) {
+            if (y < 485 || y >= 540) runs.add(y, 1000, 1060);
+            else {
+                runs.add(y, 1000, 1005);
+                runs.add(y, 1055, 1060);
+            }
+        }
+        // A pocket split only by the horizontal tile boundary
+        for (int y = 505; y < 520; y++) if (y < 507 || y >= 517) runs.add(y, 700, 720);
+        for (int y = 507; y < 517; y++) {
+            runs.add(y, 700, 702);
+            runs.add(y, 718, 720);
+        }
+        grid.applyRuns(runs);
+        List<UncoloredRegion> regions = assertMatchesFloodFill(grid);
+        assertTrue(regions.stream().anyMatch(region -> region.getArea() == 50 * 55 && region.getMinY() < 512 && region.getMaxY() > 512));
+        assertTrue(regions.stream().anyMatch(region -> region.getArea() == 16 * 10 && region.getMinY() < 512 && region.getMaxY() > 512));
+    }
+
+    private static CoverageMask createRingMask() {
+        CoverageMask mask = new CoverageMask(LAYOUT);
+        int centerX = LAYOUT.getWidth() / 2;
+        int centerY = LAYOUT.getHeight() / 2;
+        for (int y = 0; y < LAYOUT.getHeight(); y++) {
+            int dy = y - centerY;
+            int outer = (int) Math.sqrt(Math.max(0, 340 * 340 - dy * dy));
+            if (outer == 0) continue;
+            int inner = Math.abs(dy) < 60 ? (int) Math.sqrt(60 * 60 - dy * dy) : 0;
+            if (inner == 0) mask.addRange(y, centerX - outer, centerX + outer);
+            else {
+                mask.addRange(y, centerX - outer, centerX - inner);
+                mask.addRange(y, centerX + inner, centerX + outer);
+            }
+        }
+        return mask;
+    }
+
+    private static ColoringGrid createGrid(CoverageMask mask) {
+        ColoringGrid grid = new ColoringGrid(LAYOUT, CoverageBackend.DENSE);
+        grid.setColor(MapColor.GREEN);
+        grid.setMask(mask);
+        return grid;
+    }
+
+    private static void paintRandomStroke(ColoringGrid grid, Random random) {
+        float halfWidth = LAYOUT.getWidth() / 2f / LAYOUT.getResolution();
+        float halfHeight = LAYOUT.getHeight() / 2f / LAYOUT.getResolution();
+        Vector2 from = new Vector2((random.nextFloat() * 2 - 1) * halfWidth, (random.nextFloat() * 2 - 1) * halfHeight);
+        Vector2 to = new Vector2((random.nextFloat() * 2 - 1) * halfWidth, (random.nextFloat() * 2 - 1) * halfHeight);
+        grid.applyStroke(from, to, 0.5f + random.nextFloat() * 3);
+    }
+
+    // Labels every 4-connected component of masked, uncolored cells and checks the regions against them
+    private static List<UncoloredRegion> assertMatchesFloodFill(ColoringGrid grid) {
+        int width = LAYOUT.getWidth();
+        int height = LAYOUT.getHeight();
+        CoverageMask mask = grid.getMask();
+        int[] labels = new int[width * height];
+        Arrays.fill(labels, -1);
+        List<int[]> expected = new ArrayList<>();
+        IntArray stack = new IntArray();
+        for (int start = 0; start < labels.length; start++) {
+            if (labels[start] >= 0 || !isFillable(grid, mask, start % width, start / width)) continue;
+            int label = expected.size();
+            int[] region = {0, width, height, 0, 0};
+            labels[start] = label;
+            stack.add(start);
+            while (stack.notEmpty()) {
+                int cell = stack.pop();
+                int x = cell % width;
+                int y = cell / width;
+                region[0]++;
+                region[1] = Math.min(region[1], x);
+                region[2] = Math.min(region[2], y);
+                region[3] = Math.max(region[3], x + 1);
+                region[4] = Math.max(region[4], y + 1);
+                int[][] neighbors = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+                for (int[] neighbor : neighbors) {
+                    if (!LAYOUT.inBounds(neighbor[0], neighbor[1])) continue;
+                    int index = neighbor[1] * width + neighbor[0];
+                    if (labels[index] >= 0 || !isFillable(grid, mask, neighbor[0], neighbor[1])) continue;
+                    labels[index] = label;
+                    stack.add(index);
+                }
+            }
+            expected.add(region);
+        }
+        List<UncoloredRegion> regions = grid.getUncoloredRegions();
+        assertEquals(expected.size(), regions.size());
+        List<int[]> actual = new ArrayList<>();
+        for (int i = 0; i < regions.size(); i++) {
+            UncoloredRegion region = regions.get(i);
+            if (i > 0) assertTrue(regions.get(i - 1).getArea() >= region.getArea());
+            int label = labels[region.getSeedY() * width + region.getSeedX()];
+            assertTrue(label >= 0, "seed isn't uncolored");
+            int[] bruteForce = expected.get(label);
+            assertArrayEquals(bruteForce, new int[]{region.getArea(), region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY()});
+            actual.add(bruteForce);
+        }
+        assertEquals(expected.size(), new HashSet<>(actual).size(), "two regions share a component");
+        return regions;
+    }
+
+    private static boolean isFillable(ColoringGrid grid, CoverageMask mask, int x, int y) {
+        return mask.contains(x, y) && !grid.get(x, y);
+    }
+}
@@ -0,0 +1,63 @@
+package pitheguy.countycolor.coloring.history;
+
+import com.badlogic.gdx.math.Vector2;
+import org.junit.jupiter.api.Test;
+import pitheguy.countycolor.coloring.ColoringGrid;
+import pitheguy.countycolor.coloring.GridLayout;
+import pitheguy.countycolor.coloring.MapColor;
+import pitheguy.countycolor.coloring.storage.ChunkedBitmap;
+import pitheguy.countycolor.coloring.storage.CoverageBackend;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pitheguy.countycolor.coloring.history.HistorySnapshot.DOWNSCALED_SIZE;
+import static pitheguy.countycolor.render.util.RenderConst.RENDER_SIZE;
+
+class HistorySnapshotTest {
+    @Test
+    public void testSampleDefaultLayout() {
+        assertMatchesCells(paintGrid(GridLayout.DEFAULT));
+    }
+
+    @Test
+    public void testSampleSmallLayout() {
+        // Far smaller than the render area, so most samples fall outside the grid, and the strides aren't whole cells
+        assertMatchesCells(paintGrid(new GridLayout(7, 1300, 900)));
+    }
+
+    private static ColoringGrid paintGrid(GridLayout layout) {
+        ColoringGrid grid = new ColoringGrid(layout, CoverageBackend.DENSE);
+        grid.setColor(MapColor.GREEN);
+        Random random = new Random(1);
+        float halfWidth = layout.getWidth() / 2f / layout.getResolution();
+        float halfHeight = layout.getHeight() / 2f / layout.getResolution();
+        for (int i = 0; i < 80; i++) {
+            Vector2 from = new Vector2((random.nextFloat() * 2 - 1) * halfWidth, (random.nextFloat() * 2 - 1) * halfHeight);
+            Vector2 to = from.cpy().add(random.nextFloat() * 60 - 30, random.nextFloat() * 60 - 30);
+            grid.applyStroke(from, to, 0.2f + random.nextFloat() * 6);
+        }
+        return grid;
+    }
+
+    private static void assertMatchesCells(ColoringGrid grid) {
+        GridLayout layout = grid.getLayout();
+        ChunkedBitmap bitmap = HistorySnapshot.sample(grid);
+        int sampled = 0;
+        for (int y = 0; y < DOWNSCALED_SIZE; y++) {
+            int gridY = toGrid(y, layout.getResolution(), layout.getHeight());
+            for (int x = 0; x < DOWNSCALED_SIZE; x++) {
+                int gridX = toGrid(x, layout.getResolution(), layout.getWidth());
+                boolean expected = layout.inBounds(gridX, gridY) && grid.get(gridX, gridY);
+                if (expected) sampled++;
+                assertEquals(expected, bitmap.get(y * DOWNSCALED_SIZE + x), x + ", " + y);
+            }
+        }
+        assertEquals(sampled, bitmap.cardinality());
+        assertTrue(sampled > 0);
+    }
+
+    private static int toGrid(int sample, int resolution, int gridSize) {
+        return sample * RENDER_SIZE * resolution / DOWNSCALED_SIZE - RENDER_SIZE * resolution / 2 + gridSize / 2;
+    }
+}
@@ -0,0 +1,220 @@
+package pitheguy.countycolor.coloring.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedBitmapTest {
+    private static final int SIZE = 3 * Container.SIZE + 1000;
+
+    @Test
+    public void testRandomRangesMatchBitSet() {
+        Random random = new Random(1);
+        ChunkedBitmap bitmap = new ChunkedBitmap(SIZE);
+        BitSet reference = new BitSet(SIZE);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(SIZE);
+            int end = Math.min(SIZE, start + randomLength(random));
+            if (random.nextInt(3) == 0) {
+                bitmap.clear(start, end);
+                reference.clear(start, end);
+            } else {
+                bitmap.set(start, end);
+                reference.set(start, end);
+            }
+            if (i % 100 == 0) bitmap.optimize();
+        }
+        assertMatches(reference, bitmap);
+    }
+
+    @Test
+    public void testRangesAcrossChunks() {
+        ChunkedBitmap bitmap = new ChunkedBitmap(SIZE);
+        BitSet reference = new BitSet(SIZE);
+        bitmap.set(Container.SIZE - 10, 2 * Container.SIZE + 10);
+        reference.set(Container.SIZE - 10, 2 * Container.SIZE + 10);
+        assertMatches(reference, bitmap);
+        bitmap.clear(Container.SIZE - 5, 2 * Container.SIZE + 5);
+        reference.clear(Container.SIZE - 5, 2 * Container.SIZE + 5);
+        assertMatches(reference, bitmap);
+        bitmap.clear(0, SIZE);
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.cardinality());
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        Random random = new Random(2);
+        ChunkedBitmap original = new ChunkedBitmap(SIZE);
+        BitSet originalReference = new BitSet(SIZE);
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(SIZE);
+            int end = Math.min(SIZE, start + randomLength(random));
+            original.set(start, end);
+            originalReference.set(start, end);
+        }
+        ChunkedBitmap copy = original.copy();
+        BitSet copyReference = (BitSet) originalReference.clone();
+        assertEquals(original, copy);
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(SIZE);
+            int end = Math.min(SIZE, start + randomLength(random));
+            if (i % 2 == 0) {
+                copy.clear(start, end);
+                copyReference.clear(start, end);
+            } else {
+                original.set(start, end);
+                originalReference.set(start, end);
+            }
+        }
+        assertMatches(originalReference, original);
+        assertMatches(copyReference, copy);
+    }
+
+    @Test
+    public void testAndAndNot() {
+        Random random = new Random(3);
+        ChunkedBitmap a = new ChunkedBitmap(SIZE);
+        ChunkedBitmap b = new ChunkedBitmap(SIZE);
+        BitSet aReference = new BitSet(SIZE);
+        BitSet bReference = new BitSet(SIZE);
+        a.set(0, Container.SIZE);
+        aReference.set(0, Container.SIZE);
+        for (int i = 0; i < 300; i++) {
+            int start = random.nextInt(SIZE);
+            int end = Math.min(SIZE, start + randomLength(random));
+            if (i % 2 == 0) {
+                a.set(start, end);
+                aReference.set(start, end);
+            } else {
+                b.set(start, end);
+                bReference.set(start, end);
+            }
+        }
+        ChunkedBitmap and = a.and(b);
+        ChunkedBitmap andNot = a.andNot(b);
+        BitSet andReference = (BitSet) aReference.clone();
+        andReference.and(bReference);
+        BitSet andNotReference = (BitSet) aReference.clone();
+        andNotReference.andNot(bReference);
+        assertMatches(andReference, and);
+        assertMatches(andNotReference, andNot);
+        // Results share containers with their inputs, so writing to either side must leave the others alone
+        and.clear(0, SIZE);
+        andNot.set(0, SIZE);
+        assertMatches(aReference, a);
+        assertMatches(bReference, b);
+    }
+
+    @Test
+    public void testFromWords() {
+        Random random = new Random(4);
+        long[] words = new long[SIZE / 64];
+        for (int i = 0; i < words.length; i += 1 + random.nextInt(3)) words[i] = random.nextLong();
+        BitSet reference = BitSet.valueOf(words);
+        assertMatches(reference, ChunkedBitmap.fromWords(words));
+    }
+
+    @Test
+    public void testContainerConversions() {
+        long[] sparse = new long[Container.WORDS];
+        for (int i = 0; i < 1000; i++) sparse[i * 7 >> 6] |= 1L << (i * 7);
+        assertInstanceOf(ArrayContainer.class, Container.fromWords(sparse));
+
+        long[] runs = new long[Container.WORDS];
+        runs[10] = -1L;
+        runs[11] = -1L;
+        runs[500] = 0xFFFF0000L;
+        assertInstanceOf(RunContainer.class, Container.fromWords(runs));
+
+        long[] dense = new long[Container.WORDS];
+        Random random = new Random(5);
+        for (int i = 0; i < dense.length; i++) dense[i] = random.nextLong();
+        assertInstanceOf(BitmapContainer.class, Container.fromWords(dense));
+
+        long[] full = new long[Container.WORDS];
+        Arrays.fill(full, -1L);
+        assertSame(FullContainer.INSTANCE, Container.fromWords(full));
+        assertNull(Container.fromWords(new long[Container.WORDS]));
+
+        Container container = Container.fromWords(sparse);
+        container = container.add(0, ArrayContainer.MAX_SIZE + 1);
+        assertInstanceOf(BitmapContainer.class, container);
+        container = container.remove(100, Container.SIZE);
+        assertInstanceOf(ArrayContainer.class, container);
+        container = container.add(0, Container.SIZE);
+        assertSame(FullContainer.INSTANCE, container);
+        container = container.remove(10, 20);
+        assertInstanceOf(RunContainer.class, container);
+        for (int i = 0; i <= RunContainer.MAX_RUNS; i++) container = container.remove(100 + i * 4, 102 + i * 4);
+        assertInstanceOf(BitmapContainer.class, container);
+        assertNull(container.remove(0, Container.SIZE));
+    }
+
+    @Test
+    public void testRandomContainerOperations() {
+        Random random = new Random(6);
+        for (int trial = 0; trial < 20; trial++) {
+            Container container = null;
+            BitSet reference = new BitSet(Container.SIZE);
+            for (int i = 0; i < 300; i++) {
+                int start = random.nextInt(Container.SIZE);
+                int end = Math.min(Container.SIZE, start + randomLength(random));
+                if (random.nextInt(3) == 0) {
+                    if (container != null) container = container.remove(start, end);
+                    reference.clear(start, end);
+                } else {
+                    container = container == null ? Container.ofRange(start, end) : container.add(start, end);
+                    reference.set(start, end);
+                }
+                if (reference.isEmpty()) assertNull(container);
+                else assertMatches(reference, container);
+                if (i % 50 == 0 && container != null) container = Container.fromWords(container.toWords());
+            }
+        }
+    }
+
+    private static int randomLength(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> 1 + random.nextInt(8);
+            case 1 -> 1 + random.nextInt(200);
+            case 2 -> 1 + random.nextInt(5000);
+            default -> 1 + random.nextInt(Container.SIZE);
+        };
+    }
+
+    private static void assertMatches(BitSet reference, ChunkedBitmap bitmap) {
+        assertEquals(reference.cardinality(), bitmap.cardinality());
+        assertEquals(reference.isEmpty(), bitmap.isEmpty());
+        long[] words = reference.toLongArray();
+        for (int word = 0; word < SIZE / 64; word++)
+            assertEquals(word < words.length ? words[word] : 0, bitmap.getWord(word), "word " + word);
+        for (int i = 0; i < SIZE; i += 97) {
+            assertEquals(reference.get(i), bitmap.get(i), "bit " + i);
+            int nextSet = reference.nextSetBit(i);
+            assertEquals(nextSet < SIZE ? nextSet : -1, bitmap.nextSetBit(i), "next set bit from " + i);
+            assertEquals(reference.nextClearBit(i), bitmap.nextClearBit(i), "next clear bit from " + i);
+        }
+    }
+
+    private static void assertMatches(BitSet reference, Container container) {
+        assertEquals(reference.cardinality(), container.cardinality());
+        long[] words = reference.toLongArray();
+        long[] containerWords = container.toWords();
+        for (int word = 0; word < Container.WORDS; word++) {
+            long expected = word < words.length ? words[word] : 0;
+            assertEquals(expected, container.getWord(word), "word " + word);
+            assertEquals(expected, containerWords[word], "word " + word);
+        }
+        for (int i = 0; i < Container.SIZE; i += 61) {
+            assertEquals(reference.get(i), container.get(i), "bit " + i);
+            int nextSet = reference.nextSetBit(i);
+            assertEquals(nextSet < 0 ? -1 : nextSet, container.nextSetBit(i), "next set bit from " + i);
+            assertEquals(reference.nextClearBit(i), container.nextClearBit(i), "next clear bit from " + i);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package pitheguy.countycolor.coloring.storage;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.LongBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pitheguy.countycolor.coloring.CoverageTile.SIZE;
+import static pitheguy.countycolor.coloring.CoverageTile.WORDS_PER_ROW;
+import static pitheguy.countycolor.coloring.CoverageTile.getRangeMask;
+
+// Every backend is checked against DenseTileStorage, which is a plain bitmap
+class TileStorageTest {
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testRandomRuns(CoverageBackend backend) {
+        Random random = new Random(1);
+        TileStorage storage = backend.createStorage();
+        TileStorage reference = new DenseTileStorage();
+        for (int i = 0; i < 5000; i++) applyRandomRun(random, storage, reference);
+        assertMatches(reference, storage);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testAlignedBlocks(CoverageBackend backend) {
+        TileStorage storage = backend.createStorage();
+        TileStorage reference = new DenseTileStorage();
+        // Whole quadrants and leaves filled and then punched, which is what collapses and splits quadtree nodes
+        for (int size = SIZE; size >= 8; size /= 2) {
+            int origin = SIZE - size;
+            for (int y = origin / 2; y < origin / 2 + size / 2; y++) {
+                storage.setRun(y, origin / 2, origin / 2 + size / 2);
+                reference.setRun(y, origin / 2, origin / 2 + size / 2);
+            }
+        }
+        assertMatches(reference, storage);
+        for (int y = 0; y < SIZE; y += 7) {
+            storage.clearRun(y, y % 64, y % 64 + 1);
+            reference.clearRun(y, y % 64, y % 64 + 1);
+        }
+        assertMatches(reference, storage);
+        for (int y = 0; y < SIZE; y++) {
+            storage.setRun(y, 0, SIZE);
+            reference.setRun(y, 0, SIZE);
+        }
+        assertMatches(reference, storage);
+        for (int y = 0; y < SIZE; y++) storage.clearRun(y, 0, SIZE);
+        assertMatches(new DenseTileStorage(), storage);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testCopiesAreIndependent(CoverageBackend backend) {
+        Random random = new Random(2);
+        TileStorage storage = backend.createStorage();
+        TileStorage reference = new DenseTileStorage();
+        for (int i = 0; i < 2000; i++) applyRandomRun(random, storage, reference);
+        TileStorage copy = storage.copy();
+        TileStorage copyReference = reference.copy();
+        for (int i = 0; i < 2000; i++) {
+            if (i % 2 == 0) applyRandomRun(random, storage, reference);
+            else applyRandomRun(random, copy, copyReference);
+        }
+        assertMatches(reference, storage);
+        assertMatches(copyReference, copy);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CoverageBackend.class)
+    public void testRetainAll(CoverageBackend backend) {
+        Random random = new Random(3);
+        TileStorage storage = backend.createStorage();
+        TileStorage reference = new DenseTileStorage();
+        for (int i = 0; i < 3000; i++) applyRandomRun(random, storage, reference);
+        long[] mask = new long[SIZE * WORDS_PER_ROW];
+        for (int y = 0; y < SIZE; y++) {
+            int start = Math.abs(y - SIZE / 2);
+            int end = SIZE - start / 2;
+            for (int word = start >> 6; word <= (end - 1) >> 6; word++)
+                mask[y * WORDS_PER_ROW + word] |= getRangeMask(word, start, end);
+        }
+        assertEquals(reference.retainAll(mask), storage.retainAll(mask));
+        assertMatches(reference, storage);
+        storage.retainAll(null);
+        assertMatches(new DenseTileStorage(), storage);
+    }
+
+    private static void applyRandomRun(Random random, TileStorage storage, TileStorage reference) {
+        int y = random.nextInt(SIZE);
+        int startX = random.nextInt(SIZE);
+        int endX = Math.min(SIZE, startX + 1 + random.nextInt(random.nextBoolean() ? 16 : SIZE));
+        if (random.nextInt(3) == 0) {
+            storage.clearRun(y, startX, endX);
+            reference.clearRun(y, startX, endX);
+        } else {
+            storage.setRun(y, startX, endX);
+            reference.setRun(y, startX, endX);
+        }
+    }
+
+    private static void assertMatches(TileStorage reference, TileStorage storage) {
+        LongBuffer expected = LongBuffer.allocate(SIZE * WORDS_PER_ROW + 1);
+        LongBuffer actual = LongBuffer.allocate(SIZE * WORDS_PER_ROW + 1);
+        expected.put(0);
+        actual.put(0);
+        reference.copyRows(0, SIZE, expected);
+        storage.copyRows(0, SIZE, actual);
+        assertEquals(expected.flip(), actual.flip());
+        for (int y = 0; y < SIZE; y++) {
+            for (int word = 0; word < WORDS_PER_ROW; word++)
+                assertEquals(reference.getWord(y, word), storage.getWord(y, word), "row " + y + " word " + word);
+            for (int x = y % 13; x < SIZE; x += 37) {
+                assertEquals(reference.get(x, y), storage.get(x, y), x + ", " + y);
+                assertEquals(reference.nextSetBit(y, x), storage.nextSetBit(y, x), "next set bit from " + x + ", " + y);
+                assertEquals(reference.nextClearBit(y, x), storage.nextClearBit(y, x), "next clear bit from " + x + ", " + y);
+            }
+        }
+    }
+}
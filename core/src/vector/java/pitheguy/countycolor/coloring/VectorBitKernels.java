@@ -0,0 +1,102 @@
+package pitheguy.countycolor.coloring;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+// The JDK 17 Vector API has no lane-wise bit count, so popcounts use the SWAR reduction on every lane and only
+// reduce across lanes once per call.
+class VectorBitKernels implements BitKernels {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final LongVector LANE_INDICES = LongVector.zero(SPECIES).addIndex(1);
+
+    @Override
+    public int cardinality(long[] words, int length) {
+        int bound = SPECIES.loopBound(length);
+        LongVector sum = LongVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += SPECIES.length()) sum = sum.add(bitCount(LongVector.fromArray(SPECIES, words, i)));
+        int cardinality = (int) sum.reduceLanes(VectorOperators.ADD);
+        for (int i = bound; i < length; i++) cardinality += Long.bitCount(words[i]);
+        return cardinality;
+    }
+
+    @Override
+    public int countRuns(long[] words, int length) {
+        if (length == 0) return 0;
+        int runs = Long.bitCount(words[0] & ~(words[0] << 1));
+        int bound = 1 + SPECIES.loopBound(length - 1);
+        LongVector sum = LongVector.zero(SPECIES);
+        for (int i = 1; i < bound; i += SPECIES.length()) {
+            LongVector current = LongVector.fromArray(SPECIES, words, i);
+            LongVector previous = LongVector.fromArray(SPECIES, words, i - 1);
+            LongVector covered = current.lanewise(VectorOperators.LSHL, 1).or(previous.lanewise(VectorOperators.LSHR, 63));
+            sum = sum.add(bitCount(current.and(covered.not())));
+        }
+        runs += (int) sum.reduceLanes(VectorOperators.ADD);
+        for (int i = bound; i < length; i++) runs += Long.bitCount(words[i] & ~(words[i] << 1 | words[i - 1] >>> 63));
+        return runs;
+    }
+
+    @Override
+    public void and(long[] words, long[] other, int length) {
+        int bound = SPECIES.loopBound(length);
+        for (int i = 0; i < bound; i += SPECIES.length())
+            LongVector.fromArray(SPECIES, words, i).and(LongVector.fromArray(SPECIES, other, i)).intoArray(words, i);
+        for (int i = bound; i < length; i++) words[i] &= other[i];
+    }
+
+    @Override
+    public void andNot(long[] words, long[] other, int length) {
+        int bound = SPECIES.loopBound(length);
+        for (int i = 0; i < bound; i += SPECIES.length())
+            LongVector.fromArray(SPECIES, words, i).lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, other, i)).intoArray(words, i);
+        for (int i = bound; i < length; i++) words[i] &= ~other[i];
+    }
+
+    @Override
+    public int retainAll(long[] words, long[] mask, int length) {
+        int bound = SPECIES.loopBound(length);
+        LongVector sum = LongVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            LongVector current = LongVector.fromArray(SPECIES, words, i);
+            LongVector retained = LongVector.fromArray(SPECIES, mask, i);
+            sum = sum.add(bitCount(current.lanewise(VectorOperators.AND_NOT, retained)));
+            current.and(retained).intoArray(words, i);
+        }
+        int removed = (int) sum.reduceLanes(VectorOperators.ADD);
+        for (int i = bound; i < length; i++) {
+            removed += Long.bitCount(words[i] & ~mask[i]);
+            words[i] &= mask[i];
+        }
+        return removed;
+    }
+
+    // The lane count divides 64, so every aligned group of lanes lands in a single destination word
+    @Override
+    public void gatherBits(long[] words, int[] wordIndices, long[] shifts, long[] destination, int count) {
+        Arrays.fill(destination, 0, (count + 63) >> 6, 0);
+        int bound = SPECIES.loopBound(count);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            LongVector bits = LongVector.fromArray(SPECIES, words, 0, wordIndices, i)
+                .lanewise(VectorOperators.LSHR, LongVector.fromArray(SPECIES, shifts, i)).and(1L);
+            destination[i >> 6] |= bits.lanewise(VectorOperators.LSHL, LANE_INDICES.add(i & 63)).reduceLanes(VectorOperators.OR);
+        }
+        for (int i = bound; i < count; i++) destination[i >> 6] |= (words[wordIndices[i]] >>> shifts[i] & 1) << i;
+    }
+
+    private static LongVector bitCount(LongVector v) {
+        v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        v = v.and(0x3333333333333333L).add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        v = v.add(v.lanewise(VectorOperators.LSHR, 8));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 16));
+        return v.add(v.lanewise(VectorOperators.LSHR, 32)).and(0x7F);
+    }
+
+    @Override
+    public String toString() {
+        return "Vector (" + SPECIES.vectorBitSize() + "-bit)";
+    }
+}